@@ -1,23 +1,38 @@
-import javax.swing.*;
-import java.awt.*;
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 /**
  *  OthelloAI is a class that provides valuable support 
- *  to the gameboard. Most importantly, it finds all legal moves
- *  for a specified player based on the gameboard, and also
- *  conducts the AI's best possible move, based on the highest
- *  net chip gain, if needed.
+ *  to the gameboard. Most importantly, it knows the AI's color
+ *  and settings, and finds the AI's best possible move on its 
+ *  own thread, using an OthelloSearch within a time and node 
+ *  budget, if needed. If a file of trained weights for the 
+ *  evaluation is found next to the program, it is loaded the 
+ *  first time the AI thinks, and likewise for an opening book, 
+ *  which the AI plays from without searching while it can.
+ *
+ *  While the human player thinks, the AI can ponder: it guesses 
+ *  the human's move from its last search and searches the 
+ *  position that move would leave, keeping the results in its 
+ *  table. If the guess is right, the AI carries on with that 
+ *  search and answers as soon as its budget is used up, which 
+ *  may be at once; if not, it starts again, with the table 
+ *  already holding much of what it needs. When it has no guess, 
+ *  it searches the human's position itself, which helps with 
+ *  whichever move the human plays.
  *
  *  @author Nathan Harbison / Max White
  *  @version 1.0
  **/
 public class OthelloAI
 {
-   /**
-   * An array containing all colors used by the JButtons on the gameboard
-   */
-   private static final Color[] colors = {Color.GREEN.darker(), Color.BLACK, 
-   Color.WHITE};
    /**
    * Tells whether the AI's turn is before the player
    */
@@ -27,10 +42,93 @@ public class OthelloAI
    */
    private static int myColor;
    /**
-   * A matrix containing all the possible directions that pieces can be captured
+   * The most time the AI can think about a move in milliseconds, or 0 if 
+   * there is no limit
+   */
+   private static long timeLimit = 1000;
+   /**
+   * The most positions the AI can look at when thinking about a move, or 0 
+   * if there is no limit
+   */
+   private static long nodeLimit = 0;
+   /**
+   * The table of positions the AI has already searched, kept from one move
+   * to the next; created when first needed
+   */
+   private static OthelloTranspositionTable table;
+   /**
+   * The most memory the AI's table of searched positions can use, in bytes
+   */
+   private static long hashBytes = 32L << 20;
+   /**
+   * How the AI's table of searched positions replaces old entries
+   */
+   private static OthelloTranspositionTable.Replacement replacement = 
+   OthelloTranspositionTable.Replacement.DEPTH_PREFERRED;
+   /**
+   * The number of threads the AI thinks with
+   */
+   private static int threads = Runtime.getRuntime().availableProcessors();
+   /**
+   * The number of empty squares at or below which the AI plays perfectly
+   */
+   private static int endgameEmpties = 18;
+   /**
+   * The file of trained weights loaded when the AI first thinks, if it
+   * exists
+   */
+   private static final String WEIGHTS_FILE = "othello.weights";
+   /**
+   * The weights the AI evaluates positions with; loaded when first needed
+   */
+   private static int[] weights;
+   /**
+   * The opening book opened when the AI first thinks, if it exists
+   */
+   private static final String BOOK_FILE = "othello.book";
+   /**
+   * The opening book the AI plays from, or null if it has none
+   */
+   private static OthelloBook book;
+   /**
+   * Whether or not the AI has looked for its opening book yet
+   */
+   private static boolean bookChecked;
+   /**
+   * The thread the AI thinks on, which runs one search at a time
+   */
+   private static final ExecutorService thinker = 
+   Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "OthelloAI");
+      t.setDaemon(true);
+      return t;
+   });
+   /**
+   * The search the AI uses to find its moves; created when first needed
+   */
+   private static OthelloSearch search;
+   /**
+   * Whether or not the AI ponders while the human player thinks
+   */
+   private static boolean ponder = true;
+   /**
+   * The search the AI is pondering with, or null if it is not pondering
+   */
+   private static CompletableFuture<Byte> pondering;
+   /**
+   * The position the AI expects to be asked to move in when it is 
+   * pondering with a guess of the human's move, or null if it has no guess
+   */
+   private static OthelloPosition expected;
+   /**
+   * The search the AI is thinking about its move with, or null if it has 
+   * not been asked to move since its settings last changed
+   */
+   private static CompletableFuture<Byte> thinking;
+   /**
+   * How long to wait for the AI to stop pondering, in milliseconds
    */
-   private static final int[][] directions = {{-1, 0}, {-1, 1}, {0, 1}, {1, 1}, 
-   {1, 0}, {1, -1}, {0, -1}, {-1, -1}};
+   private static final long STOP_TIMEOUT = 1000;
    /**
    * Sets the color of the AI's piece
    * @param x the index value of the AI's piece color according to the 
@@ -65,249 +163,262 @@ public class OthelloAI
       return isFirst;
    }
    /**
-   * Based on the current pieces on the board, conducts the AI's move
-   * @param m an int matrix representing JButton of the gameboard, composed of 
-   * the index values of the colors of the corresponding piece
-   * @param board a matrix of JButtons that the gameboard is composed of
-   * @param g the OthelloGameboard executing the command
+   * Sets the most time the AI can think about a move
+   * @param ms the time limit in milliseconds, or 0 for no limit
    */
-   public static void doAIMove(int[][] m, JButton[][] board, OthelloGameboard g)
+   public static void setTimeLimit(long ms)
    {
-      int[][] moves = legalMoves(m, isFirst);
-      if(moves.length == 0)
-         return;
-      if(moves.length == 1)
+      timeLimit = ms;
+      discardSearch();
+   }
+   /**
+   * Sets the most positions the AI can look at when thinking about a move
+   * @param nodes the node limit, or 0 for no limit
+   */
+   public static void setNodeLimit(long nodes)
+   {
+      nodeLimit = nodes;
+      discardSearch();
+   }
+   /**
+   * Sets the size of the table of positions the AI has already searched; 
+   * takes effect from the next move
+   * @param bytes the most memory the table can use, in bytes
+   * @param r how the table replaces old entries
+   */
+   public static void setHashSize(long bytes, 
+   OthelloTranspositionTable.Replacement r)
+   {
+      hashBytes = bytes;
+      replacement = r;
+      table = null;
+      discardSearch();
+   }
+   /**
+   * Sets the number of threads the AI thinks with; more threads let it 
+   * look further ahead in the same time
+   * @param n the number of threads
+   */
+   public static void setThreads(int n)
+   {
+      threads = n;
+      discardSearch();
+   }
+   /**
+   * Sets the number of empty squares at or below which the AI solves the
+   * rest of the game exactly instead of estimating
+   * @param n the number of empty squares, or 0 to never solve
+   */
+   public static void setEndgameEmpties(int n)
+   {
+      endgameEmpties = n;
+      discardSearch();
+   }
+   /**
+   * Sets the weights the AI evaluates positions with, instead of those in
+   * the weights file
+   * @param w the weights of every stage, as given to OthelloEvaluation
+   */
+   public static void setWeights(int[] w)
+   {
+      weights = w;
+      discardSearch();
+   }
+   /**
+   * Sets the opening book the AI plays from, instead of the one in the 
+   * book file
+   * @param b the book, or null for the AI to always search
+   */
+   public static void setBook(OthelloBook b)
+   {
+      book = b;
+      bookChecked = true;
+   }
+   /**
+   * Returns the opening book the AI plays from, opening the book file the 
+   * first time if it exists
+   * @return the book, or null if there is none
+   */
+   private static OthelloBook getBook()
+   {
+      if(!bookChecked)
       {
-         g.executeMove(moves[0]);
-         return;
+         bookChecked = true;
+         Path file = Paths.get(BOOK_FILE);
+         if(Files.exists(file))
+            try {
+               book = new OthelloBook(file);
+            } catch(IOException e) {
+               e.printStackTrace();
+            }
       }
-      int[] netGain = new int[moves.length];
-      for(int x = 0; x < moves.length; x++)
+      return book;
+   }
+   /**
+   * Returns the weights the AI evaluates positions with, loading them from
+   * the weights file the first time if it exists, and otherwise using the
+   * default weights
+   * @return the weights
+   */
+   private static int[] getWeights()
+   {
+      if(weights == null)
       {
-         if((moves[x][0] == 0 && moves[x][1] == 0) || (moves[x][0] == 0 && 
-         moves[x][1] == 7) || (moves[x][0] == 7 && moves[x][1] == 0) || 
-         (moves[x][0] == 7 && moves[x][1] == 7))
-         {
-            g.executeMove(moves[x]);
-            return;
-         }
-         netGain[x] = netChipGain(moves[x], m);
+         Path file = Paths.get(WEIGHTS_FILE);
+         weights = OthelloEvaluation.defaultWeights();
+         if(Files.exists(file))
+            try {
+               weights = OthelloEvaluation.load(file);
+            } catch(IOException e) {
+               e.printStackTrace();
+            }
       }
-      int maxPos = 0;
-      for(int x = 1; x < netGain.length; x++)
-         if(netGain[x] > netGain[maxPos])
-            maxPos = x;
-      int tmp = maxPos;
-      boolean allCorners = false;
-      while(isCorner(moves[maxPos], m))
+      return weights;
+   }
+   /**
+   * Returns the search the AI uses to find its moves, creating it with the 
+   * current settings if needed
+   * @return the AI's search
+   */
+   private static OthelloSearch getSearch()
+   {
+      if(table == null)
+         table = new OthelloTranspositionTable(hashBytes, replacement);
+      if(search == null)
       {
-         allCorners = true;
-         netGain[maxPos] = Integer.MIN_VALUE;
-         maxPos = 0;
-         for(int x = 1; x < netGain.length; x++)
-            if(netGain[x] > netGain[maxPos])
-               maxPos = x;
-         for(int x = 0; x < netGain.length; x++)
-            if(netGain[x] != Integer.MIN_VALUE)
-               allCorners = false;
-         if(allCorners)
-            break;
+         search = new OthelloSearch(table, timeLimit, nodeLimit);
+         search.setThreads(threads);
+         search.setEndgameEmpties(endgameEmpties);
+         search.setWeights(getWeights());
       }
-      if(allCorners)
-         g.executeMove(moves[tmp]);
-      else
-         g.executeMove(moves[maxPos]);
+      return search;
    }
    /**
-   * For a certain move, finds the net gain of a move, calculated from the gain 
-   * of chips and loss of chips from the opponents next best move
-   * @param move an array containing information about a possible move,
-   * @param board an int matrix representing the current buttons on the gameboard
-   * @return the net gain of chips for a certain move
+   * Sets whether or not the AI ponders while the human player thinks
+   * @param b whether or not the AI ponders
    */
-   private static int netChipGain(int[] move, int[][] board)
+   public static void setPondering(boolean b)
    {
-      int[][] m = makeCopyOf(board);
-      int chipsGained = chipsGained(move, m, true);
-      //m should be changed now
-      
-      int[][] moves = legalMoves(m, !isFirst);
-      if(moves.length == 0)
-         return chipsGained;
-      
-      int[] netGains = new int[moves.length];
-      for(int x = 0; x < moves.length; x++)
-         netGains[x] = chipsGained(moves[x], makeCopyOf(m), false);
-      int maxPos = 0;
-      for(int x = 1; x < netGains.length; x++)
-         if(netGains[x] > netGains[maxPos])
-            maxPos = x;
-      return chipsGained - netGains[maxPos];
+      ponder = b;
+      if(!b)
+         stopPondering();
    }
    /**
-   * Creates a copy of a specified matrix
-   * @param s the matrix to be copied
-   * @return a copy of the matrix
+   * Starts the AI pondering while the human player thinks about their move, 
+   * if pondering is on; any pondering already going on is stopped first
+   * @param p the current position, with the human player to move
    */
-   private static int[][] makeCopyOf(int[][] s)
+   public static void startPondering(OthelloPosition p)
    {
-      int[][] m = new int[s.length][s[0].length];
-      for(int x = 0; x < s.length; x++)
-         m[x] = Arrays.copyOf(s[x], m[0].length);
-      return m;
+      stopPondering();
+      if(!ponder || p.isGameOver())
+         return;
+      OthelloSearch s = getSearch();
+      s.setListener(null);
+      byte guess = s.predictMove(p);
+      if(guess != OthelloMove.PASS)
+         expected = p.play(guess);
+      else if(p.legalMoves() == 0)
+         expected = p.pass();
+      pondering = s.ponderAsync(expected != null ? expected : p, thinker);
    }
    /**
-   * Finds the number of chips that are gained from a certain move
-   * @param move an array containing information about a possible move
-   * @param m an int matrix representing the gameboard
-   * @param me whether or not the moves is the AI's or not
-   * @return the number of chips captured with the specified move
+   * Returns whether or not the AI has been pondering the position it is now 
+   * asked to move in, and so can answer without thinking again from the 
+   * start
+   * @param p the position, with the AI to move
+   * @return whether or not the AI guessed the human player's move
    */
-   private static int chipsGained(int[] move, int[][] m, boolean me)
+   public static boolean isPonderHit(OthelloPosition p)
    {
-      int color;
-      if(me)
-         color = myColor;
-      else
-      {
-         if(myColor == 1)
-            color = 2;
-         else
-            color = 1;
-      }
-      int chipsGained = 1;
-      for(int x = 2; x < move.length; x += 4)
-      {
-         if(move[x+2] == -1)
-            break;
-         int row = move[0], col = move[1];
-         m[row][col] = color;
-         while(row != move[x+2] || col != move[x+3])
-         {
-            row += move[x];
-            col += move[x+1];
-            if(m[row][col] != color)
-               chipsGained++;
-            m[row][col] = color;
-         }
-      }
-      return chipsGained;
+      return pondering != null && p.equals(expected);
    }
    /**
-   * Checks if a certain move would allow the other player to play in the corner
-   * @param move the move to be checked
-   * @param board an int matrix representing the current Othello gameboard
-   * @return whether or not the given move allows the other player to player 
-   * in the corner
+   * Stops the AI pondering, if it is, and waits for its search to end, so 
+   * that nothing is left running when the game is reset, resigned or saved
    */
-   private static boolean isCorner(int[] move, int[][] board)
+   public static void stopPondering()
    {
-      if(move[0] <= 1 && move[1] <= 1 && board[0][0] == 0)
-         return true;
-      if(move[0] >= 6 && move[1] <= 1 && board[7][0] == 0)
-         return true;
-      if(move[0] <= 1 && move[1] >= 6 && board[0][7] == 0)
-         return true;
-      if(move[0] >= 6 && move[1] >= 6 && board[7][7] == 0)
-         return true;
-      
-      return false;
+      CompletableFuture<Byte> f = pondering;
+      pondering = null;
+      expected = null;
+      if(f == null)
+         return;
+      f.cancel(true);
+      waitForThinker();
    }
-   
    /**
-   * Finds all the possible legal moves for a specified player
-   * @param board an int matrix representing the gameboard
-   * @param playerOne whether or not the current player is player one
-   * @return all legal moves for a specified player
+   * Waits for the search running on the AI's thread, if any, to end after 
+   * it has been cancelled
    */
-   public static int[][] legalMoves(int[][] board, boolean playerOne)
+   private static void waitForThinker()
    {
-      int[][] z = new int[64][34];
-      int rlength = 0;
-      int clength = 0;
-      for(int x = 0; x < board.length; x++)
-         for(int y = 0; y < board[0].length; y++)
-            if(board[x][y] == 0)
-            {
-               int[] startingPos = new int[32];
-               for(int s = 0; s < 32; s++)
-                  startingPos[s] = -1;
-               int l = 0;
-               for(int d = 0; d < 8; d++)
-               {
-                  int[] dir = findPossibleDirection(board, directions[d], x, 
-                  y, playerOne);
-                  if(dir[0] != -1)
-                  {
-                     startingPos[l] = directions[d][0];
-                     startingPos[l+1] = directions[d][1];
-                     startingPos[l+2] = dir[0];
-                     startingPos[l+3] = dir[1];
-                     l += 4;
-                  } 
-               }
-               if(l > 0)
-               {
-                  if(l+2 > clength)
-                     clength = l+2;
-                  int[] arr = new int[34];
-                  arr[0] = x;
-                  arr[1] = y;
-                  System.arraycopy(startingPos, 0, arr, 2, startingPos.length);
-                  z[rlength] = arr;
-                  rlength++;
-               }             
-            }
-      int[][] fin = new int[rlength][clength];
-      for(int x = 0; x < fin.length; x++)
-         for(int y = 0; y < fin[0].length; y++)
-            fin[x][y] = z[x][y];
-      return fin;
+      try {
+         thinker.submit(() -> {}).get(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch(ExecutionException | TimeoutException e) {
+         e.printStackTrace();
+      }
    }
    /**
-   * Determines if a direction for a certain blank piece is in a straight line 
-   * with one of the current player's pieces, indicating a possible legal move
-   * @param board an int matrix representing the gameboard
-   * @param dir an array specifying the direction to be checked
-   * @param r the row of the starting piece
-   * @param c the column of the starting piece
-   * @param playerOne whether or not the current player is player one
-   * @return an int array of the end position of a move if legal
-   */
-   private static int[] findPossibleDirection(int[][] board, int[] dir, int r, 
-   int c, boolean playerOne)
+   * Discards the AI's search after its settings have changed, stopping its 
+   * helper threads. Any search still running, whether pondering or thinking 
+   * about a move, is cancelled and waited for first, so that its threads 
+   * are not taken from under it.
+   */
+   private static void discardSearch()
    {
-      int you, opponent;
-      if(playerOne)
+      stopPondering();
+      CompletableFuture<Byte> f = thinking;
+      thinking = null;
+      if(f != null && !f.isDone())
       {
-         you = 1;
-         opponent = 2;
+         f.cancel(true);
+         waitForThinker();
       }
-      else
+      if(search != null)
+         search.setThreads(1);
+      search = null;
+   }
+   /**
+   * Based on the current pieces on the board, starts the AI thinking about 
+   * its move on its own thread, so that the gameboard stays responsive
+   * @param p the current position, with the AI to move
+   * @param l told about the AI's progress as it thinks, on the AI's thread; 
+   * may be null
+   * @return a future completed with the AI's move, or OthelloMove.PASS if it 
+   * has no moves; cancelling it stops the AI. If the move comes from the 
+   * opening book, the future is already complete, and if the AI was 
+   * pondering this position, it is the future of that search.
+   */
+   public static CompletableFuture<Byte> findMoveAsync(OthelloPosition p, 
+   OthelloSearchListener l)
+   {
+      OthelloBook b = getBook();
+      if(b != null)
       {
-         you = 2;
-         opponent = 1;
-      }
-      int[] loc = {-1};
-      try {
-         if(board[r+dir[0]][c+dir[1]] == opponent)
+         byte move = b.findMove(p);
+         if(move != OthelloMove.PASS)
          {
-            while(board[r+dir[0]][c+dir[1]] != 0)
-            {
-               r += dir[0];
-               c += dir[1];
-               if(board[r][c] == you)
-               {
-                  loc = new int[] {r, c};
-                  break;
-               }
-            }
+            stopPondering();
+            return CompletableFuture.completedFuture(move);
          }
-      } 
-      catch(ArrayIndexOutOfBoundsException e) {
-         return loc;}
-      if(loc[0] == -1)
-         return loc;
-      return loc;
+      }
+      OthelloSearch s = getSearch();
+      if(isPonderHit(p))
+      {
+         CompletableFuture<Byte> f = pondering;
+         pondering = null;
+         expected = null;
+         s.setListener(l);
+         s.ponderHit();
+         thinking = f;
+         return f;
+      }
+      stopPondering();
+      s.setListener(l);
+      thinking = s.findBestMoveAsync(p, thinker);
+      return thinking;
    }
 }
@@ -0,0 +1,800 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/**
+ *  An OthelloArchive is a collection of finished games kept in one file,
+ *  which games are only ever added to the end of. The file is the same as
+ *  the files written by OthelloSelfPlay: the magic number "OTHG" and a
+ *  version, followed by one record per game holding the number of moves
+ *  (one unsigned byte), the moves (one byte each, row * 8 + col, or -1 for
+ *  a pass) and the final chip difference for black (one signed byte). Any
+ *  archive can therefore be used to train weights or build an opening
+ *  book.
+ *
+ *  Archives are read and written a buffer at a time through a FileChannel
+ *  by a Reader and a Writer, and a Reader only takes the bytes of each
+ *  record apart, so scanning an archive goes as fast as the disk. Games are
+ *  numbered in the order they were added, from 0. A side index, kept in the
+ *  archive's file name with ".idx" added, lets an opened archive find a
+ *  game by its number, or every game ending in a certain position, up to
+ *  reflection or rotation, without a scan. The index starts with the magic
+ *  number "OTHI", a version, the number of games and the size of the
+ *  archive when it was built, followed by where each game starts in the
+ *  archive (8 bytes each), then a key for each game (8 bytes each) sorted
+ *  in order, holding part of the hash of the game's final position in its
+ *  high bits and the number of the game in its low bits.
+ *
+ *  Games can be imported from and exported to WTHOR databases, the format
+ *  used by the French Othello Federation for its archive of tournament
+ *  games. Games in a WTHOR database that were not played to the end, or
+ *  that hold an illegal move, are left out on import.
+ *
+ *  Run with "import", an archive and one or more WTHOR databases to add
+ *  their games; "export", an archive and a WTHOR database to write; "index"
+ *  and an archive to build its index; "scan" and an archive to read every
+ *  game, adding "-check" to play each one and check it; or "show", an
+ *  archive and the number of a game.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloArchive implements Closeable
+{
+   /**
+   * Marks the start of an archive: "OTHG" in ASCII
+   */
+   public static final int MAGIC = 0x4f544847;
+   /**
+   * The version of the format of archives
+   */
+   public static final int VERSION = 1;
+   /**
+   * The size of the header at the start of an archive
+   */
+   private static final int HEADER_BYTES = 8;
+   /**
+   * The largest a record can be: a count, 255 moves and a result
+   */
+   private static final int MAX_RECORD_BYTES = 257;
+   /**
+   * The size of the buffers archives are read and written through
+   */
+   private static final int BUFFER_BYTES = 1 << 20;
+   /**
+   * Marks the start of an index: "OTHI" in ASCII
+   */
+   private static final int INDEX_MAGIC = 0x4f544849;
+   /**
+   * The version of the format of indexes
+   */
+   private static final int INDEX_VERSION = 1;
+   /**
+   * The size of the header at the start of an index
+   */
+   private static final int INDEX_HEADER_BYTES = 24;
+   /**
+   * The number of low bits of a key holding the number of a game; an index
+   * can hold just under 2^28 games, so that each part of it can be mapped
+   * into memory in one piece
+   */
+   private static final int ID_BITS = 28;
+   /**
+   * The size of the header at the start of a WTHOR database
+   */
+   private static final int WTHOR_HEADER_BYTES = 16;
+   /**
+   * The size of each game in a WTHOR database
+   */
+   private static final int WTHOR_GAME_BYTES = 68;
+   /**
+   * The number of moves each game in a WTHOR database has room for
+   */
+   private static final int WTHOR_MOVES = 60;
+   /**
+   * The file of the archive, kept open to read games from
+   */
+   private FileChannel channel;
+   /**
+   * Where each game starts in the archive, mapped from the index
+   */
+   private LongBuffer offsets;
+   /**
+   * The keys of the games sorted in order, mapped from the index
+   */
+   private LongBuffer keys;
+
+   /**
+   * Opens an archive along with its index
+   * @param path the file of the archive
+   * @throws IOException if the archive or its index cannot be read, or the
+   * index is missing or was built for a smaller archive
+   */
+   public OthelloArchive(Path path) throws IOException
+   {
+      Path index = indexPath(path);
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      if(!Files.exists(index))
+      {
+         channel.close();
+         throw new IOException(path + " has no index; index it first");
+      }
+      try(FileChannel in = FileChannel.open(index, StandardOpenOption.READ))
+      {
+         ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+         while(header.hasRemaining() && in.read(header) >= 0);
+         header.flip();
+         if(header.remaining() < INDEX_HEADER_BYTES || header.getInt() !=
+            INDEX_MAGIC || header.getInt() != INDEX_VERSION)
+            throw new IOException(index + " is not an index of an archive");
+         long games = header.getLong();
+         if(header.getLong() != channel.size())
+            throw new IOException(index + " is out of date; index " + path +
+               " again");
+         if(in.size() != INDEX_HEADER_BYTES + games * 16)
+            throw new IOException(index + " is the wrong size");
+         offsets = in.map(FileChannel.MapMode.READ_ONLY, INDEX_HEADER_BYTES,
+            games * 8).asLongBuffer();
+         keys = in.map(FileChannel.MapMode.READ_ONLY, INDEX_HEADER_BYTES +
+            games * 8, games * 8).asLongBuffer();
+      }
+      catch(IOException e)
+      {
+         channel.close();
+         throw e;
+      }
+   }
+   /**
+   * Returns the number of games in the archive
+   * @return the number of games
+   */
+   public long size()
+   {
+      return offsets.capacity();
+   }
+   /**
+   * Reads a game from the archive
+   * @param id the number of the game
+   * @return the game
+   * @throws IOException if the game cannot be read or could not have been
+   * played
+   */
+   public OthelloGame getGame(long id) throws IOException
+   {
+      if(id < 0 || id >= size())
+         throw new IndexOutOfBoundsException("No game " + id);
+      ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_BYTES);
+      long at = offsets.get((int)id);
+      while(record.hasRemaining() && channel.read(record, at +
+         record.position()) >= 0);
+      record.flip();
+      int count = record.get() & 0xff;
+      if(record.remaining() < count + 1)
+         throw new IOException("Game " + id + " is cut short");
+      byte[] moves = new byte[count];
+      record.get(moves);
+      return replay(moves, count, record.get());
+   }
+   /**
+   * Finds every game that ended in a certain position, or in one of its
+   * reflections or rotations
+   * @param black the chips of the black player at the end
+   * @param white the chips of the white player at the end
+   * @return the numbers of the games, in order
+   * @throws IOException if a game cannot be read
+   */
+   public List<Long> findByFinalPosition(long black, long white)
+   throws IOException
+   {
+      long high = key(black, white, 0) >>> ID_BITS;
+      //find the first key with the right high bits, then check the final
+      //position of every game having them, since only part of the hash is
+      //kept
+      int lo = 0, hi = keys.capacity();
+      while(lo < hi)
+      {
+         int mid = (lo + hi) >>> 1;
+         if(keys.get(mid) >>> ID_BITS < high)
+            lo = mid + 1;
+         else
+            hi = mid;
+      }
+      List<Long> found = new ArrayList<Long>();
+      long canonical = canonicalHash(black, white);
+      for(int x = lo; x < keys.capacity() && keys.get(x) >>> ID_BITS == high;
+         x++)
+      {
+         long id = keys.get(x) & (1L << ID_BITS) - 1;
+         OthelloPosition end = getGame(id).getPosition();
+         if(canonicalHash(end.getBlack(), end.getWhite()) == canonical)
+            found.add(id);
+      }
+      found.sort(null);
+      return found;
+   }
+   /**
+   * Closes the archive
+   * @throws IOException if the file cannot be closed
+   */
+   public void close() throws IOException
+   {
+      channel.close();
+   }
+   /**
+   * Returns the file the index of an archive is kept in
+   * @param archive the file of the archive
+   * @return the file of the index
+   */
+   public static Path indexPath(Path archive)
+   {
+      return archive.resolveSibling(archive.getFileName() + ".idx");
+   }
+   /**
+   * Builds the index of an archive, replacing any index it had
+   * @param archive the file of the archive
+   * @return the number of games in the archive
+   * @throws IOException if the archive cannot be read or the index cannot
+   * be written, or the archive has too many games to index
+   */
+   public static long index(Path archive) throws IOException
+   {
+      long[] offsets = new long[1 << 16];
+      long[] keys = new long[1 << 16];
+      int count = 0;
+      long size;
+      try(Reader in = new Reader(archive))
+      {
+         while(in.next())
+         {
+            if(count == Integer.MAX_VALUE / 8)
+               throw new IOException(archive + " has too many games to index");
+            if(count == offsets.length)
+            {
+               offsets = Arrays.copyOf(offsets, count * 2);
+               keys = Arrays.copyOf(keys, count * 2);
+            }
+            //positions are played without checking the moves, which is
+            //much faster, and the index is only a guide to the archive
+            OthelloPosition p = OthelloPosition.START;
+            for(int x = 0; x < in.getMoveCount(); x++)
+               p = p.play(in.getMove(x));
+            offsets[count] = in.getOffset();
+            keys[count] = key(p.getBlack(), p.getWhite(), count);
+            count++;
+         }
+         size = in.size();
+      }
+      Arrays.parallelSort(keys, 0, count);
+
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+      try(FileChannel out = FileChannel.open(indexPath(archive),
+         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         buffer.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putLong(count)
+            .putLong(size);
+         for(long[] part : new long[][] {offsets, keys})
+            for(int x = 0; x < count; x++)
+            {
+               if(!buffer.hasRemaining())
+                  write(out, buffer);
+               buffer.putLong(part[x]);
+            }
+         write(out, buffer);
+      }
+      return count;
+   }
+   /**
+   * Finds the key of a game in the index
+   * @param black the chips of the black player at the end of the game
+   * @param white the chips of the white player at the end of the game
+   * @param id the number of the game
+   * @return the key, which is never negative
+   */
+   private static long key(long black, long white, long id)
+   {
+      return canonicalHash(black, white) >>> ID_BITS + 1 << ID_BITS | id;
+   }
+   /**
+   * Finds the hash of the canonical form of a final position (see
+   * OthelloSymmetry)
+   * @param black the chips of the black player
+   * @param white the chips of the white player
+   * @return the hash
+   */
+   private static long canonicalHash(long black, long white)
+   {
+      int s = OthelloSymmetry.canonical(black, white);
+      return OthelloZobrist.hash(OthelloSymmetry.transform(black, s),
+         OthelloSymmetry.transform(white, s));
+   }
+   /**
+   * Plays the moves of a game from the starting position, checking each
+   * one, and checks that the game ended with the right result
+   * @param moves the moves
+   * @param count the number of moves
+   * @param result the final chip difference for black
+   * @return the game
+   * @throws IOException if the game could not have been played
+   */
+   private static OthelloGame replay(byte[] moves, int count, int result)
+   throws IOException
+   {
+      OthelloGame game = new OthelloGame();
+      try {
+         for(int x = 0; x < count; x++)
+            game.play(moves[x]);
+      } catch(IllegalArgumentException | IllegalStateException e) {
+         throw new IOException("Bad game in archive: " + e.getMessage());
+      }
+      OthelloPosition p = game.getPosition();
+      if(result != OthelloEndgame.finalScore(p.getBlack(), p.getWhite()) ||
+         !game.isGameOver())
+         throw new IOException("Bad game in archive: wrong result");
+      return game;
+   }
+   /**
+   * Writes out everything in a buffer and empties it, for the archive, its
+   * indexes and opening books
+   * @param channel the file
+   * @param buffer the buffer, ready to be filled
+   * @throws IOException if the file cannot be written
+   */
+   static void write(FileChannel channel, ByteBuffer buffer)
+   throws IOException
+   {
+      buffer.flip();
+      while(buffer.hasRemaining())
+         channel.write(buffer);
+      buffer.clear();
+   }
+   /**
+   * Adds the finished games of WTHOR databases to the end of an archive
+   * @param archive the file of the archive, which is created if it does
+   * not exist
+   * @param databases the WTHOR databases
+   * @return the number of games added
+   * @throws IOException if a file cannot be read or written, or is not a
+   * WTHOR database of games
+   */
+   public static long importWthor(Path archive, List<Path> databases)
+   throws IOException
+   {
+      long added = 0;
+      OthelloGame game = new OthelloGame();
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES - BUFFER_BYTES %
+         WTHOR_GAME_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      try(Writer out = new Writer(archive))
+      {
+         for(Path f : databases)
+            try(FileChannel in = FileChannel.open(f, StandardOpenOption.READ))
+            {
+               buffer.clear().limit(WTHOR_HEADER_BYTES);
+               while(buffer.hasRemaining() && in.read(buffer) >= 0);
+               buffer.flip();
+               //a board size of 0 also means 8 by 8; the type is 0 for games
+               if(buffer.remaining() < WTHOR_HEADER_BYTES ||
+                  (buffer.get(12) != 0 && buffer.get(12) != 8) ||
+                  buffer.get(13) != 0 || in.size() != WTHOR_HEADER_BYTES +
+                  (buffer.getInt(4) & 0xffffffffL) * WTHOR_GAME_BYTES)
+                  throw new IOException(f + " is not a WTHOR database of " +
+                     "games");
+               buffer.clear();
+               while(in.read(buffer) >= 0)
+               {
+                  buffer.flip();
+                  for(; buffer.remaining() >= WTHOR_GAME_BYTES;
+                     buffer.position(buffer.position() + WTHOR_GAME_BYTES))
+                     if(readWthor(buffer, buffer.position() + 8, game))
+                     {
+                        out.write(game);
+                        added++;
+                     }
+                  buffer.compact();
+               }
+            }
+      }
+      return added;
+   }
+   /**
+   * Plays the moves of a game in a WTHOR database, adding the passes it
+   * leaves out
+   * @param buffer holds the database
+   * @param at where the moves of the game start in the buffer
+   * @param game the game to play the moves in, which is started again
+   * @return whether or not the moves were legal and ended the game
+   */
+   private static boolean readWthor(ByteBuffer buffer, int at,
+   OthelloGame game)
+   {
+      game.reset();
+      for(int x = 0; x < WTHOR_MOVES; x++)
+      {
+         //moves are 10 * row + col, counting from 1, and 0 after the last
+         int m = buffer.get(at + x) & 0xff;
+         if(m == 0 || game.isGameOver())
+            break;
+         int row = m / 10 - 1, col = m % 10 - 1;
+         if(row < 0 || row > 7 || col < 0 || col > 7)
+            return false;
+         byte move = OthelloMove.of(row, col);
+         if(game.mustPass())
+            game.pass();
+         if(!game.getPosition().isLegal(move))
+            return false;
+         game.play(move);
+      }
+      return game.isGameOver();
+   }
+   /**
+   * Writes every game of an archive to a WTHOR database, giving each the
+   * same tournament and players, numbered 0
+   * @param archive the file of the archive
+   * @param database the WTHOR database to write
+   * @return the number of games written
+   * @throws IOException if a file cannot be read or written
+   */
+   public static long exportWthor(Path archive, Path database)
+   throws IOException
+   {
+      long written = 0;
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES - BUFFER_BYTES %
+         WTHOR_GAME_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      try(Reader in = new Reader(archive);
+         FileChannel out = FileChannel.open(database,
+         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         out.position(WTHOR_HEADER_BYTES);
+         while(in.next())
+         {
+            if(!buffer.hasRemaining())
+               write(out, buffer);
+            //black's score counts the empty squares for the winner
+            int score = (64 + in.getResult()) / 2;
+            buffer.putShort((short)0).putShort((short)0).putShort((short)0);
+            buffer.put((byte)score).put((byte)score);
+            int n = 0;
+            for(int x = 0; x < in.getMoveCount(); x++)
+            {
+               byte m = in.getMove(x);
+               if(m != OthelloMove.PASS)
+               {
+                  buffer.put((byte)((OthelloMove.row(m) + 1) * 10 +
+                     OthelloMove.col(m) + 1));
+                  n++;
+               }
+            }
+            for(; n < WTHOR_MOVES; n++)
+               buffer.put((byte)0);
+            written++;
+         }
+         write(out, buffer);
+         LocalDate today = LocalDate.now();
+         buffer.put((byte)(today.getYear() / 100))
+            .put((byte)(today.getYear() % 100))
+            .put((byte)today.getMonthValue()).put((byte)today.getDayOfMonth());
+         buffer.putInt((int)written).putShort((short)0);
+         buffer.putShort((short)today.getYear());
+         buffer.put((byte)8).put((byte)0).put((byte)0).put((byte)0);
+         out.position(0);
+         write(out, buffer);
+      }
+      return written;
+   }
+   /**
+   * Imports, exports, indexes, scans or shows a game of an archive
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings, as described above
+   * @throws IOException if a file cannot be read or written
+   */
+   public static void main(String[] args) throws IOException
+   {
+      long start = System.nanoTime();
+      if(args.length >= 3 && args[0].equals("import"))
+      {
+         List<Path> databases = new ArrayList<Path>();
+         for(int x = 2; x < args.length; x++)
+            databases.add(Paths.get(args[x]));
+         long n = importWthor(Paths.get(args[1]), databases);
+         System.out.printf("%,d games added in %.1fs%n", n,
+            (System.nanoTime() - start) / 1e9);
+      }
+      else if(args.length == 3 && args[0].equals("export"))
+      {
+         long n = exportWthor(Paths.get(args[1]), Paths.get(args[2]));
+         System.out.printf("%,d games written in %.1fs%n", n,
+            (System.nanoTime() - start) / 1e9);
+      }
+      else if(args.length == 2 && args[0].equals("index"))
+      {
+         long n = index(Paths.get(args[1]));
+         System.out.printf("%,d games indexed in %.1fs%n", n,
+            (System.nanoTime() - start) / 1e9);
+      }
+      else if(args.length >= 2 && args[0].equals("scan"))
+      {
+         boolean check = args.length > 2 && args[2].equals("-check");
+         long n = 0, moves = 0, bytes;
+         try(Reader in = new Reader(Paths.get(args[1])))
+         {
+            for(; in.next(); n++)
+            {
+               moves += in.getMoveCount();
+               if(check)
+                  in.getGame();
+            }
+            bytes = in.size();
+         }
+         double seconds = (System.nanoTime() - start) / 1e9;
+         System.out.printf("%,d games (%,d moves) %s in %.2fs, %,.0f " +
+            "games/s, %.1f MB/s%n", n, moves, check ? "checked" : "read",
+            seconds, n / seconds, bytes / 1e6 / seconds);
+      }
+      else if(args.length == 3 && args[0].equals("show"))
+      {
+         try(OthelloArchive archive = new OthelloArchive(Paths.get(args[1])))
+         {
+            OthelloGame g = archive.getGame(Long.parseLong(args[2]));
+            StringBuilder moves = new StringBuilder();
+            for(int x = 0; x < g.getMoveCount(); x++)
+               moves.append(OthelloMove.toString(g.getMove(x))).append(' ');
+            OthelloPosition end = g.getPosition();
+            System.out.println(moves);
+            System.out.printf("black %+d, %,d games in the archive end the " +
+               "same way%n", OthelloEndgame.finalScore(end.getBlack(),
+               end.getWhite()), archive.findByFinalPosition(end.getBlack(),
+               end.getWhite()).size());
+         }
+      }
+      else
+         System.out.println("Usage: java OthelloArchive import archive " +
+            "wthor-file...\n       java OthelloArchive export archive " +
+            "wthor-file\n       java OthelloArchive index archive\n" +
+            "       java OthelloArchive scan archive [-check]\n" +
+            "       java OthelloArchive show archive game");
+   }
+   /**
+   * A Reader goes through the games of an archive in order, taking apart
+   * one record at a time from a large buffer
+   */
+   public static class Reader implements Closeable
+   {
+      /**
+      * The file of the archive
+      */
+      private FileChannel channel;
+      /**
+      * Holds the part of the file being read
+      */
+      private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+      /**
+      * Where in the file the buffer starts
+      */
+      private long bufferStart;
+      /**
+      * Where in the file the current game starts
+      */
+      private long offset;
+      /**
+      * The number of the current game
+      */
+      private long id = -1;
+      /**
+      * The moves of the current game
+      */
+      private byte[] moves = new byte[255];
+      /**
+      * The number of moves of the current game
+      */
+      private int moveCount;
+      /**
+      * The final chip difference for black of the current game
+      */
+      private int result;
+
+      /**
+      * Opens an archive and reads past its header
+      * @param path the file of the archive
+      * @throws IOException if the file cannot be read or is not an archive
+      */
+      public Reader(Path path) throws IOException
+      {
+         channel = FileChannel.open(path, StandardOpenOption.READ);
+         buffer.flip();
+         if(!fill(HEADER_BYTES) || buffer.getInt() != MAGIC ||
+            buffer.getInt() != VERSION)
+         {
+            channel.close();
+            throw new IOException(path + " is not an archive of games");
+         }
+      }
+      /**
+      * Moves on to the next game
+      * @return whether or not there was another game, rather than the end
+      * of the archive
+      * @throws IOException if the file cannot be read, or ends part way
+      * through a game
+      */
+      public boolean next() throws IOException
+      {
+         if(!fill(1))
+            return false;
+         offset = bufferStart + buffer.position();
+         moveCount = buffer.get() & 0xff;
+         if(!fill(moveCount + 1))
+            throw new IOException("The archive ends part way through a game");
+         buffer.get(moves, 0, moveCount);
+         result = buffer.get();
+         id++;
+         return true;
+      }
+      /**
+      * Makes sure the buffer holds a number of bytes that have not been
+      * read, reading more of the file if needed
+      * @param n the number of bytes
+      * @return whether or not there were enough bytes left in the file
+      * @throws IOException if the file cannot be read
+      */
+      private boolean fill(int n) throws IOException
+      {
+         if(buffer.remaining() >= n)
+            return true;
+         bufferStart += buffer.position();
+         buffer.compact();
+         while(buffer.position() < n && channel.read(buffer) >= 0);
+         buffer.flip();
+         return buffer.remaining() >= n;
+      }
+      /**
+      * Returns the number of the current game
+      * @return the number of the game, counting from 0
+      */
+      public long getId()
+      {
+         return id;
+      }
+      /**
+      * Returns where the current game starts in the archive
+      * @return the offset of the game in bytes
+      */
+      public long getOffset()
+      {
+         return offset;
+      }
+      /**
+      * Returns the number of moves of the current game, including passes
+      * @return the number of moves
+      */
+      public int getMoveCount()
+      {
+         return moveCount;
+      }
+      /**
+      * Returns one of the moves of the current game
+      * @param i the index of the move, starting at 0 for the first move
+      * @return the move
+      */
+      public byte getMove(int i)
+      {
+         if(i < 0 || i >= moveCount)
+            throw new IndexOutOfBoundsException("No move " + i);
+         return moves[i];
+      }
+      /**
+      * Returns the result of the current game
+      * @return the final chip difference for black, counting empty squares
+      * for the winner
+      */
+      public int getResult()
+      {
+         return result;
+      }
+      /**
+      * Plays the current game, checking its moves and result
+      * @return the game
+      * @throws IOException if the game could not have been played
+      */
+      public OthelloGame getGame() throws IOException
+      {
+         return replay(moves, moveCount, result);
+      }
+      /**
+      * Returns the size of the archive
+      * @return the size of the file in bytes
+      * @throws IOException if the size cannot be found
+      */
+      public long size() throws IOException
+      {
+         return channel.size();
+      }
+      /**
+      * Closes the archive
+      * @throws IOException if the file cannot be closed
+      */
+      public void close() throws IOException
+      {
+         channel.close();
+      }
+   }
+   /**
+   * A Writer adds games to the end of an archive, a large buffer at a time
+   */
+   public static class Writer implements Closeable
+   {
+      /**
+      * The file of the archive
+      */
+      private FileChannel channel;
+      /**
+      * Holds the games not yet written to the file
+      */
+      private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+      /**
+      * Opens an archive to add games to, creating it if it does not exist
+      * @param path the file of the archive
+      * @throws IOException if the file cannot be written or is not an
+      * archive
+      */
+      public Writer(Path path) throws IOException
+      {
+         channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+         if(channel.size() == 0)
+            buffer.putInt(MAGIC).putInt(VERSION);
+         else
+         {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while(header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ||
+               header.getInt() != VERSION)
+            {
+               channel.close();
+               throw new IOException(path + " is not an archive of games");
+            }
+         }
+         channel.position(channel.size());
+      }
+      /**
+      * Adds a finished game
+      * @param game the game, which must have started from the usual starting
+      * position
+      * @throws IOException if the file cannot be written
+      */
+      public void write(OthelloGame game) throws IOException
+      {
+         if(buffer.remaining() < MAX_RECORD_BYTES)
+            OthelloArchive.write(channel, buffer);
+         OthelloPosition p = game.getPosition();
+         buffer.put((byte)game.getMoveCount());
+         for(int x = 0; x < game.getMoveCount(); x++)
+            buffer.put(game.getMove(x));
+         buffer.put((byte)OthelloEndgame.finalScore(p.getBlack(),
+            p.getWhite()));
+      }
+      /**
+      * Writes out the games not yet written and closes the archive
+      * @throws IOException if the file cannot be written
+      */
+      public void close() throws IOException
+      {
+         try {
+            OthelloArchive.write(channel, buffer);
+         } finally {
+            channel.close();
+         }
+      }
+   }
+}
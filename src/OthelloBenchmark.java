@@ -0,0 +1,381 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+/**
+ *  OthelloBenchmark times the hot paths of the AI over a fixed set of
+ *  positions, so that a change that slows them down can be caught. The
+ *  positions are taken from random games played from a fixed seed, so the
+ *  same positions are used on every run: some from the opening, some from
+ *  the middle of the game and some from the endgame. Each benchmark is run
+ *  for a while to let the JIT compiler warm up, then timed over several
+ *  rounds, and the time and number of bytes allocated per operation are
+ *  printed.
+ *
+ *  The benchmarks are:
+ *  legalMoves - finding the legal moves of a position
+ *  flips - finding the chips captured by each legal move
+ *  netChipGain - the chips gained by each legal move less the most the
+ *     opponent can gain back with one reply
+ *  play - making the position after each legal move
+ *  evaluate - estimating the score of a position with the patterns already
+ *     read
+ *  search - choosing a move with a fixed node budget and one thread; the
+ *     bytes allocated per node searched are printed as well, and should be
+ *     0, since the search keeps no state on the heap but buffers made once
+ *
+ *  ordering - not timed; searches every opening and midgame position to a
+ *     fixed depth with move ordering off (only the move from the table is
+ *     tried first) and on, and prints the nodes searched, the effective
+ *     branching factor and how often the first move tried caused a cutoff
+ *
+ *  Run with the names of the benchmarks to run (all if none are given),
+ *  optionally followed by "-r" and the number of rounds.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloBenchmark
+{
+   /**
+   * The seed of the random games the positions are taken from
+   */
+   private static final long SEED = 0x0e11011eL;
+   /**
+   * The number of positions taken from each stage of the game
+   */
+   private static final int POSITIONS_PER_STAGE = 64;
+   /**
+   * The range of empty squares of each stage of the game: opening,
+   * midgame and endgame
+   */
+   private static final int[][] STAGES = {{48, 56}, {28, 40}, {14, 22}};
+   /**
+   * The names of the stages of the game
+   */
+   private static final String[] STAGE_NAMES = {"opening", "midgame",
+      "endgame"};
+   /**
+   * The number of nodes each search may visit
+   */
+   private static final long SEARCH_NODES = 20000;
+   /**
+   * The depth each position is searched to by the ordering benchmark
+   */
+   private static final int ORDERING_DEPTH = 8;
+   /**
+   * The time each round of a benchmark runs for, in nanoseconds
+   */
+   private static final long ROUND_TIME = 500000000L;
+   /**
+   * The number of untimed rounds run first to warm up the JIT compiler
+   */
+   private static final int WARMUP_ROUNDS = 3;
+   /**
+   * Used to measure the bytes allocated by the current thread
+   */
+   private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+   /**
+   * Where the results of the benchmarks are kept, so the JIT compiler
+   * cannot remove the work as unused
+   */
+   private static volatile long sink;
+   /**
+   * The positions of the stage currently being benchmarked
+   */
+   private static OthelloPosition[] corpus;
+   /**
+   * The evaluation of each position of the current stage, with its
+   * patterns already read
+   */
+   private static OthelloEvaluation[] evaluations;
+   /**
+   * The search used by the search benchmark
+   */
+   private static OthelloSearch search;
+   /**
+   * The table used by the search benchmark, cleared before each search
+   */
+   private static OthelloTranspositionTable table;
+   /**
+   * The number of nodes visited by the search benchmark in its timed rounds
+   */
+   private static long searchNodes;
+   /**
+   * The number of searches run by the search benchmark in its timed rounds
+   */
+   private static long searches;
+
+   /**
+   * Runs the benchmarks
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: the names of the benchmarks to run, then optionally
+   * "-r" and the number of timed rounds
+   */
+   public static void main(String[] args)
+   {
+      List<String> names = new ArrayList<String>();
+      int rounds = 5;
+      for(int x = 0; x < args.length; x++)
+      {
+         if(args[x].equals("-r") && x + 1 < args.length)
+            rounds = Integer.parseInt(args[++x]);
+         else
+            names.add(args[x]);
+      }
+      table = new OthelloTranspositionTable(16L << 20,
+         OthelloTranspositionTable.Replacement.DEPTH_PREFERRED);
+      search = new OthelloSearch(table, 0, SEARCH_NODES);
+      OthelloPosition[][] stages = makeCorpus();
+      String[] benchmarks = {"legalMoves", "flips", "netChipGain", "play",
+         "evaluate", "search"};
+      IntToLongFunction[] ops = {OthelloBenchmark::legalMoves,
+         OthelloBenchmark::flips, OthelloBenchmark::netChipGain,
+         OthelloBenchmark::play, OthelloBenchmark::evaluate,
+         OthelloBenchmark::search};
+      System.out.printf("%-12s %-8s %25s %10s %12s%n", "benchmark", "stage",
+         "ns/op", "B/op", "MB/s");
+      for(int b = 0; b < benchmarks.length; b++)
+      {
+         if(!names.isEmpty() && !names.contains(benchmarks[b]))
+            continue;
+         for(int s = 0; s < stages.length; s++)
+         {
+            corpus = stages[s];
+            evaluations = new OthelloEvaluation[corpus.length];
+            for(int x = 0; x < corpus.length; x++)
+            {
+               evaluations[x] = new OthelloEvaluation();
+               evaluations[x].setPosition(corpus[x].getMover(),
+                  corpus[x].getOpponent());
+            }
+            double bytes = run(benchmarks[b], STAGE_NAMES[s], ops[b], rounds);
+            if(benchmarks[b].equals("search"))
+               System.out.printf("%-12s %-8s %,12.1f nodes/op %,16.4f B/node%n",
+                  "", "", (double)searchNodes / searches, bytes * searches /
+                  searchNodes);
+         }
+      }
+      if(names.isEmpty() || names.contains("ordering"))
+         ordering(stages);
+   }
+   /**
+   * Searches the opening and midgame positions to a fixed depth with move
+   * ordering off and on, and prints how much searching each took
+   * @param stages the positions of each stage
+   */
+   private static void ordering(OthelloPosition[][] stages)
+   {
+      OthelloSearch s = new OthelloSearch(table, 0, 0);
+      s.setMaxDepth(ORDERING_DEPTH);
+      s.setEndgameEmpties(0);
+      System.out.printf("%n%-12s %-8s %-9s %14s %10s %12s%n", "ordering",
+         "stage", "ordered", "nodes", "EBF", "first cut");
+      for(int x = 0; x < 2; x++)
+         for(boolean on : new boolean[] {false, true})
+         {
+            s.setMoveOrdering(on);
+            long nodes = 0;
+            double factor = 0, first = 0;
+            for(OthelloPosition p : stages[x])
+            {
+               table.clear();
+               s.findBestMove(p);
+               nodes += s.getNodes();
+               factor += s.getBranchingFactor() / stages[x].length;
+               first += s.getFirstMoveCutoffRate() / stages[x].length;
+            }
+            System.out.printf("%-12s %-8s %-9s %,14d %10.2f %11.1f%%%n",
+               "depth " + ORDERING_DEPTH, STAGE_NAMES[x], on ? "yes" : "no",
+               nodes, factor, first * 100);
+         }
+   }
+   /**
+   * Plays random games from a fixed seed and takes positions from each
+   * stage of the game, skipping positions where the player to move must
+   * pass
+   * @return the positions of each stage
+   */
+   private static OthelloPosition[][] makeCorpus()
+   {
+      Random rand = new Random(SEED);
+      OthelloPosition[][] stages = new OthelloPosition[STAGES.length][
+         POSITIONS_PER_STAGE];
+      int[] counts = new int[STAGES.length];
+      while(counts[STAGES.length - 1] < POSITIONS_PER_STAGE)
+      {
+         int[] take = new int[STAGES.length];
+         for(int s = 0; s < STAGES.length; s++)
+            take[s] = STAGES[s][0] + rand.nextInt(STAGES[s][1] - STAGES[s][0]
+               + 1);
+         OthelloPosition p = OthelloPosition.START;
+         while(!p.isGameOver())
+         {
+            long legal = p.legalMoves();
+            if(legal == 0)
+            {
+               p = p.pass();
+               continue;
+            }
+            for(int s = 0; s < STAGES.length; s++)
+               if(p.getEmpties() == take[s] && counts[s] < POSITIONS_PER_STAGE)
+                  stages[s][counts[s]++] = p;
+            for(int x = rand.nextInt(Long.bitCount(legal)); x > 0; x--)
+               legal &= legal - 1;
+            p = p.play((byte)Long.numberOfTrailingZeros(legal));
+         }
+      }
+      for(int s = 0; s < STAGES.length - 1; s++)
+         if(counts[s] < POSITIONS_PER_STAGE)
+            throw new IllegalStateException("Too few " + STAGE_NAMES[s] +
+               " positions");
+      return stages;
+   }
+   /**
+   * Runs one benchmark on the current stage and prints the results
+   * @param name the name of the benchmark
+   * @param stage the name of the stage
+   * @param op the operation being timed, given the index of a position
+   * @param rounds the number of timed rounds
+   * @return the average number of bytes allocated by each operation
+   */
+   private static double run(String name, String stage, IntToLongFunction op,
+   int rounds)
+   {
+      for(int x = 0; x < WARMUP_ROUNDS; x++)
+         round(op);
+      searchNodes = searches = 0;
+      double[] times = new double[rounds];
+      double bytes = 0;
+      for(int x = 0; x < rounds; x++)
+      {
+         double[] r = round(op);
+         times[x] = r[0];
+         bytes += r[1] / rounds;
+      }
+      double mean = 0, var = 0;
+      for(double t : times)
+         mean += t / rounds;
+      for(double t : times)
+         var += (t - mean) * (t - mean) / Math.max(1, rounds - 1);
+      System.out.printf("%-12s %-8s %,12.1f +/- %-8.1f %,10.1f %,12.1f%n", name,
+         stage, mean, Math.sqrt(var), bytes, bytes / mean * 1e3);
+      return bytes;
+   }
+   /**
+   * Runs an operation over the positions of the current stage again and
+   * again until the round's time is up
+   * @param op the operation being timed, given the index of a position
+   * @return the average time in nanoseconds and bytes allocated for each
+   * operation
+   */
+   private static double[] round(IntToLongFunction op)
+   {
+      long id = Thread.currentThread().getId();
+      long ops = 0, result = 0;
+      long startBytes = THREADS.getThreadAllocatedBytes(id);
+      long start = System.nanoTime(), time;
+      do
+      {
+         for(int x = 0; x < corpus.length; x++)
+            result += op.applyAsLong(x);
+         ops += corpus.length;
+         time = System.nanoTime() - start;
+      }
+      while(time < ROUND_TIME);
+      long bytes = THREADS.getThreadAllocatedBytes(id) - startBytes;
+      sink = result;
+      return new double[] {(double)time / ops, (double)bytes / ops};
+   }
+   /**
+   * Finds the legal moves of a position
+   * @param i the index of the position
+   * @return the legal moves
+   */
+   private static long legalMoves(int i)
+   {
+      OthelloPosition p = corpus[i];
+      return OthelloBitboard.legalMoves(p.getMover(), p.getOpponent());
+   }
+   /**
+   * Finds the chips captured by each legal move of a position
+   * @param i the index of the position
+   * @return the captured chips of all the moves combined
+   */
+   private static long flips(int i)
+   {
+      OthelloPosition p = corpus[i];
+      long me = p.getMover(), opp = p.getOpponent(), all = 0;
+      for(long legal = OthelloBitboard.legalMoves(me, opp); legal != 0;
+         legal &= legal - 1)
+         all ^= OthelloBitboard.flips(me, opp, Long.numberOfTrailingZeros(
+            legal));
+      return all;
+   }
+   /**
+   * Finds the best net gain of chips of any legal move of a position: the
+   * chips captured by the move, less the most chips the opponent can
+   * capture with their reply
+   * @param i the index of the position
+   * @return the best net gain
+   */
+   private static long netChipGain(int i)
+   {
+      OthelloPosition p = corpus[i];
+      long me = p.getMover(), opp = p.getOpponent();
+      int best = Integer.MIN_VALUE;
+      for(long legal = OthelloBitboard.legalMoves(me, opp); legal != 0;
+         legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         long newMe = me | flips | 1L << sq, newOpp = opp & ~flips;
+         int reply = 0;
+         for(long replies = OthelloBitboard.legalMoves(newOpp, newMe);
+            replies != 0; replies &= replies - 1)
+            reply = Math.max(reply, Long.bitCount(OthelloBitboard.flips(newOpp,
+               newMe, Long.numberOfTrailingZeros(replies))));
+         best = Math.max(best, Long.bitCount(flips) - reply);
+      }
+      return best;
+   }
+   /**
+   * Makes the position after each legal move of a position
+   * @param i the index of the position
+   * @return the hash codes of the new positions combined
+   */
+   private static long play(int i)
+   {
+      OthelloPosition p = corpus[i];
+      long all = 0;
+      for(long legal = p.legalMoves(); legal != 0; legal &= legal - 1)
+         all ^= p.play((byte)Long.numberOfTrailingZeros(legal)).getBlack();
+      return all;
+   }
+   /**
+   * Estimates the score of a position
+   * @param i the index of the position
+   * @return the estimated score
+   */
+   private static long evaluate(int i)
+   {
+      OthelloPosition p = corpus[i];
+      return evaluations[i].evaluate(p.getMover(), p.getOpponent());
+   }
+   /**
+   * Chooses a move for a position with an empty table and a fixed node
+   * budget, so that every run does the same work
+   * @param i the index of the position
+   * @return the move chosen
+   */
+   private static long search(int i)
+   {
+      table.clear();
+      byte move = search.findBestMove(corpus[i]);
+      searchNodes += search.getNodes();
+      searches++;
+      return move;
+   }
+}
@@ -0,0 +1,175 @@
+/**
+ *  OthelloBitboard holds the bitboard routines used to find legal moves and
+ *  the chips captured by a move. Each player's chips are stored as a single
+ *  64-bit long, where the bit (row * 8 + col) is set if that player has a
+ *  chip on the square. Moves are generated for all squares at once by
+ *  shifting and masking these longs, rather than by walking each direction
+ *  square by square: legal moves by following every line of opponent chips
+ *  one step at a time along each axis, and captured chips by a Kogge-Stone
+ *  fill in each of the eight directions.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public final class OthelloBitboard
+{
+   /**
+   * All squares except those in the first column
+   */
+   private static final long NOT_FIRST_COL = 0xfefefefefefefefeL;
+   /**
+   * All squares except those in the last column
+   */
+   private static final long NOT_LAST_COL = 0x7f7f7f7f7f7f7f7fL;
+   /**
+   * All squares except those in the first and last columns
+   */
+   private static final long INNER_COLS = NOT_FIRST_COL & NOT_LAST_COL;
+   /**
+   * The bit shift for each direction, in the order up, up-right, right,
+   * down-right, down, down-left, left, up-left
+   */
+   private static final int[] SHIFTS = {-8, -7, 1, 9, 8, 7, -1, -9};
+   /**
+   * The squares a chip can land on after being shifted in each direction,
+   * which stops chips from wrapping around to the other side of the board
+   */
+   private static final long[] MASKS = {-1L, NOT_FIRST_COL, NOT_FIRST_COL,
+   NOT_FIRST_COL, -1L, NOT_LAST_COL, NOT_LAST_COL, NOT_LAST_COL};
+
+   /**
+   * OthelloBitboard only holds static methods and cannot be instantiated
+   */
+   private OthelloBitboard()
+   {
+   }
+   /**
+   * Creates a bitboard of all the squares of the given color
+   * @param board an int matrix representing the gameboard, composed of the
+   * index values of the colors of the corresponding piece
+   * @param color the index value of the color to look for
+   * @return a bitboard with a bit set for every square of the given color
+   */
+   public static long fromMatrix(int[][] board, int color)
+   {
+      long bits = 0;
+      for(int x = 0; x < 8; x++)
+         for(int y = 0; y < 8; y++)
+            if(board[x][y] == color)
+               bits |= 1L << (x * 8 + y);
+      return bits;
+   }
+   /**
+   * Finds all the squares the current player can legally play on
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return a bitboard with a bit set for every legal move
+   */
+   public static long legalMoves(long me, long opp)
+   {
+      //opponent chips in the first or last column cannot be jumped over
+      //sideways, which also stops lines from wrapping around the board
+      long inner = opp & INNER_COLS;
+      long moves = lineEnds(me, inner, 1) | lineEnds(me, opp, 8) |
+         lineEnds(me, inner, 7) | lineEnds(me, inner, 9);
+      return moves & ~(me | opp);
+   }
+   /**
+   * Finds the squares just past every line of opponent chips that starts
+   * next to one of the current player's chips, along one axis in both
+   * directions. This is the inner part of legalMoves, written out without
+   * loops over the directions so it runs as fast as possible.
+   * @param me the chips of the current player
+   * @param pro the opponent chips that may be part of a line
+   * @param s the bit shift of the axis: 1, 7, 8 or 9
+   * @return the squares just past the end of each line
+   */
+   private static long lineEnds(long me, long pro, int s)
+   {
+      long up = pro & me >>> s, down = pro & me << s;
+      up |= pro & up >>> s;
+      down |= pro & down << s;
+      up |= pro & up >>> s;
+      down |= pro & down << s;
+      up |= pro & up >>> s;
+      down |= pro & down << s;
+      up |= pro & up >>> s;
+      down |= pro & down << s;
+      up |= pro & up >>> s;
+      down |= pro & down << s;
+      return up >>> s | down << s;
+   }
+   /**
+   * Finds all the chips that would be captured if the current player played
+   * on a certain square
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param sq the square being played on (row * 8 + col)
+   * @return a bitboard of the captured chips, or 0 if the move is not legal
+   */
+   public static long flips(long me, long opp, int sq)
+   {
+      long flips = 0;
+      for(int d = 0; d < 8; d++)
+         flips |= flipsInDirection(me, opp, sq, d);
+      return flips;
+   }
+   /**
+   * Finds the chips that would be captured in one direction if the current
+   * player played on a certain square
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param sq the square being played on (row * 8 + col)
+   * @param d the index of the direction, from 0 for up clockwise to 7 for
+   * up-left
+   * @return a bitboard of the chips captured in that direction
+   */
+   public static long flipsInDirection(long me, long opp, int sq, int d)
+   {
+      long start = 1L << sq;
+      long line = fill(start, opp & MASKS[d], SHIFTS[d]);
+      long captured = line & ~start;
+      if(captured != 0 && (shift(line, SHIFTS[d]) & MASKS[d] & me) != 0)
+         return captured;
+      return 0;
+   }
+   /**
+   * Finds all the squares next to a set of squares in any direction
+   * @param b the squares to look around
+   * @return a bitboard of every square next to one in b, which may include
+   * squares in b
+   */
+   public static long neighbours(long b)
+   {
+      long row = b | (b << 1 & NOT_FIRST_COL) | (b >>> 1 & NOT_LAST_COL);
+      return row | row << 8 | row >>> 8;
+   }
+   /**
+   * Extends a set of chips as far as possible in one direction through a
+   * set of other chips, doubling the distance covered with each step
+   * @param gen the chips to extend from
+   * @param pro the chips that may be extended through, already masked for
+   * the direction
+   * @param s the bit shift of the direction
+   * @return the starting chips along with every chip reached from them
+   */
+   private static long fill(long gen, long pro, int s)
+   {
+      gen |= pro & shift(gen, s);
+      pro &= shift(pro, s);
+      gen |= pro & shift(gen, 2 * s);
+      pro &= shift(pro, 2 * s);
+      gen |= pro & shift(gen, 4 * s);
+      return gen;
+   }
+   /**
+   * Shifts a bitboard left for a positive amount or right for a negative one
+   * @param b the bitboard to be shifted
+   * @param s the amount to shift by
+   * @return the shifted bitboard
+   */
+   private static long shift(long b, int s)
+   {
+      return s > 0 ? b << s : b >>> -s;
+   }
+}
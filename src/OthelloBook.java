@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/**
+ *  An OthelloBook is an opening book: a file of positions reached in past
+ *  games, each with the number of games that reached it and their total
+ *  result, so the AI can play the first moves of a game instantly from
+ *  experience instead of searching. To choose a move, every position the
+ *  player to move could reach is looked up, and the move leading to the
+ *  best average result is played.
+ *
+ *  A position is stored under a key made from the hash of its canonical
+ *  form (see OthelloSymmetry), so that positions that are the same up to
+ *  a reflection or rotation share one entry. The entries are sorted by
+ *  key and the file is mapped into memory rather than read, so books far
+ *  bigger than the heap can be used and opening one is instant. Since keys
+ *  are hashes, they are spread evenly, and lookups use interpolation
+ *  search, guessing where a key should be from its value, which finds it
+ *  in a handful of steps.
+ *
+ *  The file starts with the magic number "OTHB", a version and the number
+ *  of entries, followed by the entries: the key (8 bytes), the number of
+ *  games (4 bytes) and the sum of the final chip differences of those
+ *  games for the player to move (4 bytes).
+ *
+ *  Run with "build", the file to write, the number of moves of each game
+ *  to keep, and one or more files of games from OthelloSelfPlay to build a
+ *  book, or with "probe", a book and optionally a position to show the
+ *  book's moves and how long choosing one takes.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloBook
+{
+   /**
+   * Marks the start of a book: "OTHB" in ASCII
+   */
+   private static final int MAGIC = 0x4f544842;
+   /**
+   * The version of the format of books
+   */
+   private static final int VERSION = 1;
+   /**
+   * The size of the header at the start of the file
+   */
+   private static final int HEADER_BYTES = 16;
+   /**
+   * The size of each entry
+   */
+   private static final int ENTRY_BYTES = 16;
+   /**
+   * The fewest games a move must have been played in to be chosen
+   */
+   private static final int MIN_GAMES = 10;
+   /**
+   * The number of interpolation steps tried before falling back to binary
+   * search, in case the keys are not spread evenly
+   */
+   private static final int INTERPOLATION_STEPS = 8;
+   /**
+   * The entries, mapped into memory
+   */
+   private OthelloMappedEntries entries;
+   /**
+   * The number of entries
+   */
+   private long size;
+
+   /**
+   * Opens a book, mapping it into memory
+   * @param path the file of the book
+   * @throws IOException if the file cannot be read or is not a book
+   */
+   public OthelloBook(Path path) throws IOException
+   {
+      try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+      {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+         while(header.hasRemaining() && channel.read(header) >= 0);
+         header.flip();
+         if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ||
+            header.getInt() != VERSION)
+            throw new IOException(path + " is not an opening book");
+         size = header.getLong();
+         if(channel.size() != HEADER_BYTES + size * ENTRY_BYTES)
+            throw new IOException(path + " is the wrong size");
+         entries = new OthelloMappedEntries(channel, HEADER_BYTES, size,
+            ENTRY_BYTES);
+      }
+   }
+   /**
+   * Returns the number of positions in the book
+   * @return the number of entries
+   */
+   public long size()
+   {
+      return size;
+   }
+   /**
+   * Finds the key of a position, which is the same for all eight of its
+   * reflections and rotations
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the key, which is never negative
+   */
+   public static long key(long me, long opp)
+   {
+      int s = OthelloSymmetry.canonical(me, opp);
+      //short enough to be packed with a result into a positive long while
+      //the book is built
+      return OthelloZobrist.hash(OthelloSymmetry.transform(me, s),
+         OthelloSymmetry.transform(opp, s)) >>> 9;
+   }
+   /**
+   * Looks up a position
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the index of the position's entry, or -1 if it is not in the
+   * book
+   */
+   public long find(long me, long opp)
+   {
+      long key = key(me, opp);
+      long lo = 0, hi = size - 1;
+      for(int step = 0; lo <= hi; step++)
+      {
+         long low = getKey(lo), high = getKey(hi);
+         if(key < low || key > high)
+            return -1;
+         long mid;
+         if(step >= INTERPOLATION_STEPS || high == low)
+            mid = (lo + hi) >>> 1;
+         else
+            mid = lo + (long)((double)(key - low) / (high - low) * (hi - lo));
+         long k = getKey(mid);
+         if(k == key)
+            return mid;
+         if(k < key)
+            lo = mid + 1;
+         else
+            hi = mid - 1;
+      }
+      return -1;
+   }
+   /**
+   * Returns the number of games that reached the position of an entry
+   * @param i the index of the entry
+   * @return the number of games
+   */
+   public int getGames(long i)
+   {
+      return entries.getInt(i, 8);
+   }
+   /**
+   * Returns the total result of the games that reached the position of an
+   * entry
+   * @param i the index of the entry
+   * @return the sum of the final chip differences for the player to move
+   */
+   public int getScore(long i)
+   {
+      return entries.getInt(i, 12);
+   }
+   /**
+   * Chooses the move whose resulting position had the best average result
+   * for the player to move, among those played in enough games
+   * @param p the position
+   * @return the move, or OthelloMove.PASS if the book has no move for the
+   * position
+   */
+   public byte findMove(OthelloPosition p)
+   {
+      long me = p.getMover(), opp = p.getOpponent();
+      byte best = OthelloMove.PASS;
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for(long legal = p.legalMoves(); legal != 0; legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         long i = find(opp & ~flips, me | flips | 1L << sq);
+         if(i < 0 || getGames(i) < MIN_GAMES)
+            continue;
+         //the entry holds the result for the opponent, who moves next
+         double score = -(double)getScore(i) / getGames(i);
+         if(score > bestScore)
+         {
+            bestScore = score;
+            best = (byte)sq;
+         }
+      }
+      return best;
+   }
+   /**
+   * Returns the key of an entry
+   * @param i the index of the entry
+   * @return the key
+   */
+   private long getKey(long i)
+   {
+      return entries.getLong(i, 0);
+   }
+   /**
+   * Builds a book from the first moves of games written by OthelloSelfPlay
+   * @param out the file to write the book to
+   * @param plies the number of moves of each game to keep, counting passes
+   * @param games the files of games
+   * @return the number of positions in the book
+   * @throws IOException if a file cannot be read or written
+   */
+   public static long build(Path out, int plies, List<Path> games)
+   throws IOException
+   {
+      //each position is packed with its result into one long so that
+      //sorting brings together every game that reached the same position
+      long[] seen = new long[1 << 16];
+      int count = 0;
+      for(Path f : games)
+         try(OthelloArchive.Reader in = new OthelloArchive.Reader(f))
+         {
+            while(in.next())
+            {
+               OthelloGame g = in.getGame();
+               OthelloPosition end = g.getPosition();
+               int result = OthelloEndgame.finalScore(end.getBlack(),
+                  end.getWhite());
+               OthelloPosition p = g.getStart();
+               for(int x = 0; x < Math.min(plies, g.getMoveCount()); x++)
+               {
+                  p = p.play(g.getMove(x));
+                  if(count == seen.length)
+                     seen = Arrays.copyOf(seen, count * 2);
+                  int r = p.isBlackToMove() ? result : -result;
+                  seen[count++] = key(p.getMover(), p.getOpponent()) << 8 |
+                     (r + 64);
+               }
+            }
+         }
+      Arrays.parallelSort(seen, 0, count);
+
+      long entries = 0;
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+      try(FileChannel channel = FileChannel.open(out,
+         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         channel.position(HEADER_BYTES);
+         for(int x = 0; x < count; )
+         {
+            long key = seen[x] >>> 8;
+            int n = 0, total = 0;
+            for(; x < count && seen[x] >>> 8 == key; x++, n++)
+               total += (int)(seen[x] & 0xff) - 64;
+            if(buffer.remaining() < ENTRY_BYTES)
+               OthelloArchive.write(channel, buffer);
+            buffer.putLong(key).putInt(n).putInt(total);
+            entries++;
+         }
+         OthelloArchive.write(channel, buffer);
+         buffer.putInt(MAGIC).putInt(VERSION).putLong(entries);
+         channel.position(0);
+         OthelloArchive.write(channel, buffer);
+      }
+      return entries;
+   }
+   /**
+   * Builds or probes a book
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings, as described above
+   * @throws IOException if a file cannot be read or written
+   */
+   public static void main(String[] args) throws IOException
+   {
+      if(args.length >= 4 && args[0].equals("build"))
+      {
+         List<Path> games = new ArrayList<Path>();
+         for(int x = 3; x < args.length; x++)
+            games.add(Paths.get(args[x]));
+         long start = System.nanoTime();
+         long n = build(Paths.get(args[1]), Integer.parseInt(args[2]), games);
+         System.out.printf("%,d positions written in %.1fs%n", n,
+            (System.nanoTime() - start) / 1e9);
+      }
+      else if(args.length >= 2 && args[0].equals("probe"))
+      {
+         OthelloBook book = new OthelloBook(Paths.get(args[1]));
+         OthelloPosition p = OthelloPosition.START;
+         if(args.length > 2)
+            p = OthelloPosition.parse(String.join(" ", Arrays.asList(args)
+               .subList(2, args.length)));
+         System.out.printf("%,d positions in the book%n", book.size());
+         long me = p.getMover(), opp = p.getOpponent();
+         for(long legal = p.legalMoves(); legal != 0; legal &= legal - 1)
+         {
+            int sq = Long.numberOfTrailingZeros(legal);
+            long flips = OthelloBitboard.flips(me, opp, sq);
+            long i = book.find(opp & ~flips, me | flips | 1L << sq);
+            if(i >= 0)
+               System.out.printf("  %-4s %,10d games  %+6.2f%n",
+                  OthelloMove.toString((byte)sq), book.getGames(i),
+                  -(double)book.getScore(i) / book.getGames(i));
+         }
+         byte move = OthelloMove.PASS;
+         int rounds = 100000;
+         long start = System.nanoTime();
+         for(int x = 0; x < rounds; x++)
+            move = book.findMove(p);
+         System.out.printf("book move %s, %.2f microseconds each%n",
+            OthelloMove.toString(move), (System.nanoTime() - start) / 1e3 /
+            rounds);
+      }
+      else
+         System.out.println("Usage: java OthelloBook build book plies " +
+            "games...\n       java OthelloBook probe book [position]");
+   }
+}
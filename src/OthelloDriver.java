@@ -24,23 +24,26 @@ public class OthelloDriver
    {
       int game = JOptionPane.showConfirmDialog(null, "Would you like to load a saved game?", "", JOptionPane.YES_NO_OPTION);
       boolean onePlayer = false, black = false;
-      Scanner scan = null;
+      OthelloSavedGame saved = null;
       if(game == 0)
       {
          String gameFrom = JOptionPane.showInputDialog(null, "What game would you like to load?");
          while(true)
          {
+            if(gameFrom == null)
+               System.exit(0);
             try {
-               scan = new Scanner(new File(gameFrom+".txt"));
-               break;
-            } catch(FileNotFoundException e) {
-               if(gameFrom == null)
-                  System.exit(0);
-               gameFrom = JOptionPane.showInputDialog(null, "Game not found. Please enter a valid game.");
+               saved = OthelloSavedGame.load(gameFrom);
+            } catch(IOException e) {
+               System.out.println("Error: Could not load game. " + e.getMessage());
+               System.exit(0);
             }
+            if(saved != null)
+               break;
+            gameFrom = JOptionPane.showInputDialog(null, "Game not found. Please enter a valid game.");
          }
-         black = scan.nextBoolean();
-         onePlayer = scan.nextBoolean();
+         black = saved.isBlack();
+         onePlayer = saved.isTwoPlayers();
       }
       else
       {
@@ -69,7 +72,7 @@ public class OthelloDriver
       JFrame frame = new JFrame("Othello Final Project");
       frame.setSize(400, 500);
       frame.setLocation(200, 100);
-      frame.getContentPane().add(new OthelloPanel(onePlayer, black, scan));
+      frame.getContentPane().add(new OthelloPanel(onePlayer, black, saved));
       frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
       frame.setVisible(true);
    }
@@ -0,0 +1,552 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+/**
+ *  OthelloEndgame solves positions near the end of the game exactly,
+ *  finding the final chip difference with perfect play by both players
+ *  rather than estimating it. Moves that leave the opponent the fewest
+ *  replies are searched first while many squares are empty; with fewer
+ *  empties, moves into regions of the board with an odd number of empty
+ *  squares go first, and the last three empties are solved by special
+ *  routines. Exact results are shared with the midgame search through the
+ *  transposition table.
+ *
+ *  The main method runs the solver on positions from the FFO endgame test
+ *  suite, or on any file of positions in the same format, and checks the
+ *  results against the known scores.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloEndgame
+{
+   /**
+   * The depth stored in the transposition table for a solved position,
+   * deeper than any midgame search, so the score is always used
+   */
+   public static final int SOLVED = 63;
+   /**
+   * The fewest empty squares for which moves are ordered by the opponent's
+   * number of replies; below this, only parity is used
+   */
+   private static final int FASTEST_FIRST_EMPTIES = 7;
+   /**
+   * The fewest empty squares for which results are kept in the table
+   */
+   private static final int HASH_EMPTIES = 10;
+   /**
+   * The number of nodes searched between checks of the budget
+   */
+   private static final int CHECK_INTERVAL = 1024;
+   /**
+   * The four quarters of the board, used to find regions with an odd
+   * number of empty squares
+   */
+   private static final long[] QUADRANTS = {0x000000000f0f0f0fL,
+      0x00000000f0f0f0f0L, 0x0f0f0f0f00000000L, 0xf0f0f0f000000000L};
+   /**
+   * Corner squares, which are tried first among moves with equal replies
+   */
+   private static final long CORNERS = 0x8100000000000081L;
+   /**
+   * The position of the FFO endgame test suite solved by main when no file
+   * is given (number 40, 20 empties), in the same format as a line of a
+   * test file: the board in row order ('X' black, 'O' white), the player
+   * to move, then the best move and its exact score
+   */
+   private static final String FFO_40 =
+      "O--OOOOX-OOOOOOXOOXXOOOXOOXOOOXXOOOOOOXX---OOOOX----O--X-------- X; A2:+38;";
+   /**
+   * The table shared with the midgame search
+   */
+   private OthelloTranspositionTable table;
+   /**
+   * The search whose budget limits this solver, or null for no limit
+   */
+   private OthelloSearch owner;
+   /**
+   * The number of nodes visited by the current solve
+   */
+   private long nodes;
+   /**
+   * Whether or not the current solve has run out of budget
+   */
+   private boolean stopped;
+   /**
+   * The exact score of the move found by the last finished solve
+   */
+   private int score;
+   /**
+   * For each number of empty squares, the moves being searched at that
+   * depth, so no arrays are made while searching
+   */
+   private final int[][] moveStack = new int[64][32];
+   /**
+   * For each number of empty squares, the order keys of the moves being
+   * searched
+   */
+   private final int[][] keyStack = new int[64][32];
+
+   /**
+   * Constructs an OthelloEndgame
+   * @param t the table of positions already searched
+   * @param s the search whose budget limits this solver, or null if it
+   * should always run to the end
+   */
+   public OthelloEndgame(OthelloTranspositionTable t, OthelloSearch s)
+   {
+      table = t;
+      owner = s;
+   }
+   /**
+   * Finds the move with the best final chip difference for the current
+   * player. If the budget runs out first, the best move fully solved so
+   * far is returned, or the most promising one if none were.
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return the square of the best move (row * 8 + col), or -1 if the
+   * current player has no legal moves
+   */
+   public int findBestMove(long me, long opp)
+   {
+      nodes = 0;
+      stopped = false;
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(legal == 0)
+         return -1;
+      int empties = Long.bitCount(~(me | opp));
+      int n = orderMoves(me, opp, legal, empties, hashMove(OthelloZobrist.hash(
+         me, opp)));
+      int[] moves = moveStack[empties];
+      long hash = OthelloZobrist.hash(me, opp);
+      int alpha = -65, best = moves[0];
+      for(int x = 0; x < n; x++)
+      {
+         long flips = OthelloBitboard.flips(me, opp, moves[x]);
+         int v = -solve(opp & ~flips, me | flips | 1L << moves[x],
+            OthelloZobrist.afterMove(hash, moves[x], flips), -65, -alpha, false);
+         if(stopped)
+            break;
+         if(v > alpha)
+         {
+            alpha = v;
+            best = moves[x];
+         }
+      }
+      if(!stopped)
+      {
+         score = alpha;
+         table.store(hash, SOLVED, OthelloTranspositionTable.EXACT,
+            alpha * OthelloSearch.WIN, best);
+      }
+      return best;
+   }
+   /**
+   * Finds the exact final chip difference of a position with perfect play
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return the final chip difference for the current player, counting
+   * empty squares for the winner
+   */
+   public int solve(long me, long opp)
+   {
+      nodes = 0;
+      stopped = false;
+      return solve(me, opp, OthelloZobrist.hash(me, opp), -65, 65, false);
+   }
+   /**
+   * Solves a position within a window of scores
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param hash the hash of the position
+   * @param alpha the score the current player is already guaranteed
+   * @param beta the score the opponent is already guaranteed
+   * @param passed whether or not the opponent just passed
+   * @return the final chip difference, exact if between alpha and beta
+   */
+   private int solve(long me, long opp, long hash, int alpha, int beta,
+   boolean passed)
+   {
+      nodes++;
+      if(nodes % CHECK_INTERVAL == 0 && owner != null && owner.outOfBudget(
+         nodes))
+         stopped = true;
+      if(stopped)
+         return 0;
+      long empty = ~(me | opp);
+      int empties = Long.bitCount(empty);
+      if(empties <= 3 && !passed)
+         return solveLast(me, opp, empty, empties, alpha, beta);
+
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(legal == 0)
+      {
+         if(passed)
+            return finalScore(me, opp);
+         return -solve(opp, me, OthelloZobrist.afterPass(hash), -beta, -alpha,
+            true);
+      }
+      int hashMove = -1;
+      if(empties >= HASH_EMPTIES)
+      {
+         long entry = table.probe(hash);
+         if(entry != OthelloTranspositionTable.MISS)
+         {
+            hashMove = OthelloTranspositionTable.move(entry);
+            if(OthelloTranspositionTable.depth(entry) == SOLVED)
+            {
+               int v = OthelloTranspositionTable.score(entry) / OthelloSearch.WIN;
+               int bound = OthelloTranspositionTable.bound(entry);
+               if(bound == OthelloTranspositionTable.EXACT
+                  || (bound == OthelloTranspositionTable.LOWER && v >= beta)
+                  || (bound == OthelloTranspositionTable.UPPER && v <= alpha))
+                  return v;
+            }
+         }
+      }
+      int n = orderMoves(me, opp, legal, empties, hashMove);
+      int[] moves = moveStack[empties];
+      int originalAlpha = alpha;
+      int best = -65, bestMove = -1;
+      for(int x = 0; x < n; x++)
+      {
+         int sq = moves[x];
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         long childHash = 0;
+         if(empties > HASH_EMPTIES)
+            childHash = OthelloZobrist.afterMove(hash, sq, flips);
+         int v = -solve(opp & ~flips, me | flips | 1L << sq, childHash, -beta,
+            -alpha, false);
+         if(v > best)
+         {
+            best = v;
+            bestMove = sq;
+            if(v > alpha)
+               alpha = v;
+            if(alpha >= beta)
+               break;
+         }
+      }
+      if(empties >= HASH_EMPTIES && !stopped)
+      {
+         int bound;
+         if(best <= originalAlpha)
+            bound = OthelloTranspositionTable.UPPER;
+         else if(best >= beta)
+            bound = OthelloTranspositionTable.LOWER;
+         else
+            bound = OthelloTranspositionTable.EXACT;
+         table.store(hash, SOLVED, bound, best * OthelloSearch.WIN, bestMove);
+      }
+      return best;
+   }
+   /**
+   * Puts the legal moves of a position into the move stack for its number
+   * of empty squares, in the order they should be searched
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param legal the legal moves of the current player
+   * @param empties the number of empty squares
+   * @param hashMove the best move stored in the table, searched first, or -1
+   * @return the number of moves
+   */
+   private int orderMoves(long me, long opp, long legal, int empties,
+   int hashMove)
+   {
+      int[] moves = moveStack[empties];
+      int[] keys = keyStack[empties];
+      int parity = parity(~(me | opp));
+      int n = 0;
+      for(; legal != 0; legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         int key;
+         if(sq == hashMove)
+            key = -1000;
+         else if(empties >= FASTEST_FIRST_EMPTIES)
+         {
+            long flips = OthelloBitboard.flips(me, opp, sq);
+            long newMe = me | flips | 1L << sq;
+            key = Long.bitCount(OthelloBitboard.legalMoves(opp & ~flips, newMe))
+               * 16;
+            if((CORNERS & 1L << sq) != 0)
+               key -= 8;
+         }
+         else
+            key = 0;
+         if((parity & quadrant(sq)) == 0)
+            key += 4;
+         //insertion sort, as there are only a few moves
+         int x = n++;
+         for(; x > 0 && keys[x - 1] > key; x--)
+         {
+            moves[x] = moves[x - 1];
+            keys[x] = keys[x - 1];
+         }
+         moves[x] = sq;
+         keys[x] = key;
+      }
+      return n;
+   }
+   /**
+   * Solves a position with three or fewer empty squares, trying the squares
+   * in odd regions first
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param empty the empty squares
+   * @param empties the number of empty squares
+   * @param alpha the score the current player is already guaranteed
+   * @param beta the score the opponent is already guaranteed
+   * @return the final chip difference for the current player
+   */
+   private int solveLast(long me, long opp, long empty, int empties, int alpha,
+   int beta)
+   {
+      if(empties == 0)
+         return finalScore(me, opp);
+      int sq1 = Long.numberOfTrailingZeros(empty);
+      if(empties == 1)
+         return solve1(me, opp, sq1);
+      empty &= empty - 1;
+      int sq2 = Long.numberOfTrailingZeros(empty);
+      if(empties == 2)
+         return solve2(me, opp, sq1, sq2, alpha, beta, false);
+      int sq3 = Long.numberOfTrailingZeros(empty & empty - 1);
+      //the square alone in its quarter goes first
+      if(quadrant(sq1) == quadrant(sq2))
+         return solve3(me, opp, sq3, sq1, sq2, alpha, beta, false);
+      if(quadrant(sq1) == quadrant(sq3))
+         return solve3(me, opp, sq2, sq1, sq3, alpha, beta, false);
+      return solve3(me, opp, sq1, sq2, sq3, alpha, beta, false);
+   }
+   /**
+   * Solves a position with three empty squares
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param sq1 the first empty square to try
+   * @param sq2 the second empty square to try
+   * @param sq3 the third empty square to try
+   * @param alpha the score the current player is already guaranteed
+   * @param beta the score the opponent is already guaranteed
+   * @param passed whether or not the opponent just passed
+   * @return the final chip difference for the current player
+   */
+   private int solve3(long me, long opp, int sq1, int sq2, int sq3, int alpha,
+   int beta, boolean passed)
+   {
+      nodes++;
+      int best = -65;
+      long flips = OthelloBitboard.flips(me, opp, sq1);
+      if(flips != 0)
+      {
+         best = -solve2(opp & ~flips, me | flips | 1L << sq1, sq2, sq3, -beta,
+            -alpha, false);
+         if(best >= beta)
+            return best;
+         if(best > alpha)
+            alpha = best;
+      }
+      flips = OthelloBitboard.flips(me, opp, sq2);
+      if(flips != 0)
+      {
+         int v = -solve2(opp & ~flips, me | flips | 1L << sq2, sq1, sq3, -beta,
+            -alpha, false);
+         if(v >= beta)
+            return v;
+         if(v > best)
+         {
+            best = v;
+            if(v > alpha)
+               alpha = v;
+         }
+      }
+      flips = OthelloBitboard.flips(me, opp, sq3);
+      if(flips != 0)
+      {
+         int v = -solve2(opp & ~flips, me | flips | 1L << sq3, sq1, sq2, -beta,
+            -alpha, false);
+         if(v > best)
+            best = v;
+      }
+      if(best == -65)
+      {
+         if(passed)
+            return finalScore(me, opp);
+         return -solve3(opp, me, sq1, sq2, sq3, -beta, -alpha, true);
+      }
+      return best;
+   }
+   /**
+   * Solves a position with two empty squares
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param sq1 the first empty square
+   * @param sq2 the second empty square
+   * @param alpha the score the current player is already guaranteed
+   * @param beta the score the opponent is already guaranteed
+   * @param passed whether or not the opponent just passed
+   * @return the final chip difference for the current player
+   */
+   private int solve2(long me, long opp, int sq1, int sq2, int alpha, int beta,
+   boolean passed)
+   {
+      nodes++;
+      int best = -65;
+      long flips = OthelloBitboard.flips(me, opp, sq1);
+      if(flips != 0)
+      {
+         best = -solve1(opp & ~flips, me | flips | 1L << sq1, sq2);
+         if(best >= beta)
+            return best;
+      }
+      flips = OthelloBitboard.flips(me, opp, sq2);
+      if(flips != 0)
+      {
+         int v = -solve1(opp & ~flips, me | flips | 1L << sq2, sq1);
+         if(v > best)
+            best = v;
+      }
+      if(best == -65)
+      {
+         if(passed)
+            return finalScore(me, opp);
+         return -solve2(opp, me, sq1, sq2, -beta, -alpha, true);
+      }
+      return best;
+   }
+   /**
+   * Solves a position with one empty square, which is played by the
+   * current player if they can, otherwise by the opponent if they can
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param sq the empty square
+   * @return the final chip difference for the current player
+   */
+   private int solve1(long me, long opp, int sq)
+   {
+      nodes++;
+      long flips = OthelloBitboard.flips(me, opp, sq);
+      if(flips != 0)
+         return 2 * (Long.bitCount(me | flips) + 1) - 64;
+      flips = OthelloBitboard.flips(opp, me, sq);
+      if(flips != 0)
+         return 64 - 2 * (Long.bitCount(opp | flips) + 1);
+      return finalScore(me, opp);
+   }
+   /**
+   * Returns the final chip difference of a finished game, with the empty
+   * squares counted for the winner
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return the final chip difference for the current player
+   */
+   public static int finalScore(long me, long opp)
+   {
+      int mine = Long.bitCount(me), theirs = Long.bitCount(opp);
+      int empties = 64 - mine - theirs;
+      if(mine > theirs)
+         return mine - theirs + empties;
+      if(mine < theirs)
+         return mine - theirs - empties;
+      return 0;
+   }
+   /**
+   * Finds the quarters of the board with an odd number of empty squares
+   * @param empty the empty squares
+   * @return a bit set for each quarter with an odd number of empties
+   */
+   private static int parity(long empty)
+   {
+      int parity = 0;
+      for(int x = 0; x < 4; x++)
+         parity |= (Long.bitCount(empty & QUADRANTS[x]) & 1) << x;
+      return parity;
+   }
+   /**
+   * Returns the quarter of the board a square is in
+   * @param sq the square (row * 8 + col)
+   * @return a single bit for the quarter
+   */
+   private static int quadrant(int sq)
+   {
+      return 1 << ((sq >> 5) * 2 + ((sq >> 2) & 1));
+   }
+   /**
+   * Finds the best move stored in the table for a position
+   * @param hash the hash of the position
+   * @return the best move, or -1 if there is none
+   */
+   private int hashMove(long hash)
+   {
+      long entry = table.probe(hash);
+      if(entry == OthelloTranspositionTable.MISS)
+         return -1;
+      return OthelloTranspositionTable.move(entry);
+   }
+   /**
+   * Returns the exact score of the move found by the last finished solve
+   * @return the final chip difference for the player who moved
+   */
+   public int getScore()
+   {
+      return score;
+   }
+   /**
+   * Returns the number of nodes visited by the last solve
+   * @return the number of nodes visited
+   */
+   public long getNodes()
+   {
+      return nodes;
+   }
+   /**
+   * Solves each test position, printing the move and score found, the time
+   * taken and the speed, and whether it matches the known result
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: optionally a file of test positions, one per line as
+   * "board player; move:score;" (such as the FFO .obf files), then
+   * optionally the size of the table in megabytes
+   * @throws IOException if the file of test positions cannot be read
+   */
+   public static void main(String[] args) throws IOException
+   {
+      List<String> tests;
+      if(args.length > 0)
+         tests = Files.readAllLines(Paths.get(args[0]));
+      else
+         tests = Arrays.asList(FFO_40);
+      long mb = args.length > 1 ? Long.parseLong(args[1]) : 64;
+      boolean allCorrect = true;
+      long totalNodes = 0, totalTime = 0;
+      for(String test : tests)
+      {
+         String[] parts = test.split(";");
+         if(parts.length < 2 || parts[0].trim().length() < 64)
+            continue;
+         OthelloPosition p = OthelloPosition.parse(parts[0]);
+         String[] answer = parts[1].trim().split(":");
+         int expected = Integer.parseInt(answer[1].replace("+", ""));
+         OthelloEndgame solver = new OthelloEndgame(new OthelloTranspositionTable(
+            mb << 20, OthelloTranspositionTable.Replacement.DEPTH_PREFERRED),
+            null);
+         long start = System.nanoTime();
+         int move = solver.findBestMove(p.getMover(), p.getOpponent());
+         long time = System.nanoTime() - start;
+         boolean correct = solver.getScore() == expected;
+         allCorrect &= correct;
+         totalNodes += solver.getNodes();
+         totalTime += time;
+         System.out.printf("%2d empties  %-4s %+3d (expected %-4s %+3d)  %8.2fs" +
+            "  %,14d nodes  %,12.0f nodes/s  %s%n", p.getEmpties(),
+            OthelloMove.toString((byte)move), solver.getScore(), answer[0],
+            expected, time / 1e9, solver.getNodes(), solver.getNodes() * 1e9 /
+            time, correct ? "ok" : "WRONG");
+      }
+      System.out.printf("total %.2fs, %,.0f nodes/s%n", totalTime / 1e9,
+         totalNodes * 1e9 / Math.max(1, totalTime));
+      if(!allCorrect)
+         System.exit(1);
+   }
+}
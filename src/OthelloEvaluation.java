@@ -0,0 +1,481 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+/**
+ *  OthelloEvaluation estimates the score of a position that is not at the
+ *  end of the game. The board is covered by patterns: the edges, the other
+ *  rows and columns, the diagonals at least four squares long, and the 3x3
+ *  block in each corner. The contents of each pattern are read as a number
+ *  in base 3 (0 for an empty square, 1 for a chip of the first player, 2
+ *  for one of the second), which is looked up in a table of weights for
+ *  that kind of pattern, so every arrangement of chips along an edge, say,
+ *  can have its own value. The number of moves each player has and the
+ *  number of chips each has next to empty squares are added on top.
+ *
+ *  The patterns are kept up to date as moves are played and taken back,
+ *  changing only the patterns through squares that changed, so evaluating
+ *  a position is a few table lookups. The first player is whoever was to
+ *  move when the position was set; since Othello treats both colors the
+ *  same, the weights are for the first player and are negated for the
+ *  second. The game is split into stages by the number of empty squares,
+ *  each with its own weights. The default weights give the same values for
+ *  each square as the old square table, shared out between the patterns
+ *  through the square; better weights can be fitted to the results of
+ *  games by OthelloTrainer, saved to a file, and loaded back with load.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloEvaluation
+{
+   /**
+   * The number of stages of the game, each with its own weights
+   */
+   public static final int STAGES = 4;
+   /**
+   * The weights are in 1/SCALE of a point, so that the value of a square
+   * can be shared evenly between the patterns through it
+   */
+   public static final int SCALE = 60;
+   /**
+   * The squares of the first instance of each kind of pattern: the edge,
+   * the second, third and fourth rows, the diagonals of lengths 8 to 4 and
+   * the 3x3 corner block; the other instances are its reflections and
+   * rotations
+   */
+   private static final int[][] PATTERNS = {
+      {0, 1, 2, 3, 4, 5, 6, 7},
+      {8, 9, 10, 11, 12, 13, 14, 15},
+      {16, 17, 18, 19, 20, 21, 22, 23},
+      {24, 25, 26, 27, 28, 29, 30, 31},
+      {0, 9, 18, 27, 36, 45, 54, 63},
+      {1, 10, 19, 28, 37, 46, 55},
+      {2, 11, 20, 29, 38, 47},
+      {3, 12, 21, 30, 39},
+      {4, 13, 22, 31},
+      {0, 1, 2, 8, 9, 10, 16, 17, 18}};
+   /**
+   * The value of each square in the old square table, from which the
+   * default weights are made
+   */
+   private static final int[] SQUARE_VALUES = {
+      100, -20, 10,  5,  5, 10, -20, 100,
+      -20, -50, -2, -2, -2, -2, -50, -20,
+       10,  -2, -1, -1, -1, -1,  -2,  10,
+        5,  -2, -1, -1, -1, -1,  -2,   5,
+        5,  -2, -1, -1, -1, -1,  -2,   5,
+       10,  -2, -1, -1, -1, -1,  -2,  10,
+      -20, -50, -2, -2, -2, -2, -50, -20,
+      100, -20, 10,  5,  5, 10, -20, 100};
+   /**
+   * The default value of each extra move a player has over the opponent
+   */
+   private static final int MOBILITY_VALUE = 8;
+   /**
+   * The default value of each extra chip a player has next to an empty
+   * square, which is negative since such chips give the opponent moves
+   */
+   private static final int FRONTIER_VALUE = -6;
+   /**
+   * Where the weights of each kind of pattern start within a stage
+   */
+   private static final int[] OFFSETS = new int[PATTERNS.length];
+   /**
+   * The index of the weight of the mobility term within a stage
+   */
+   public static final int MOBILITY;
+   /**
+   * The index of the weight of the frontier term within a stage
+   */
+   public static final int FRONTIER;
+   /**
+   * The number of weights in each stage
+   */
+   public static final int STAGE_SIZE;
+   /**
+   * The number of patterns on the board, counting every reflection and
+   * rotation
+   */
+   public static final int INSTANCES;
+   /**
+   * Where the weights of each pattern start within a stage
+   */
+   private static final int[] INSTANCE_OFFSETS;
+   /**
+   * Marks the start of a file of weights: "OTHW" in ASCII
+   */
+   private static final int MAGIC = 0x4f544857;
+   /**
+   * The version of the format of files of weights
+   */
+   private static final int VERSION = 1;
+   /**
+   * For each square, the patterns through it
+   */
+   private static final int[][] SQUARE_INSTANCES = new int[64][];
+   /**
+   * For each square, the place value of its digit in each of the patterns
+   * through it
+   */
+   private static final int[][] SQUARE_POWERS = new int[64][];
+   /**
+   * The stage of the game for each number of empty squares
+   */
+   private static final int[] STAGE_OF = new int[65];
+   /**
+   * The weights made from the old square table
+   */
+   private static final int[] DEFAULT_WEIGHTS;
+   static
+   {
+      int size = 0;
+      for(int t = 0; t < PATTERNS.length; t++)
+      {
+         OFFSETS[t] = size;
+         size += pow3(PATTERNS[t].length);
+      }
+      MOBILITY = size;
+      FRONTIER = size + 1;
+      STAGE_SIZE = size + 2;
+
+      int[][] instances = new int[64][];
+      int[] offsets = new int[64];
+      int count = 0;
+      for(int t = 0; t < PATTERNS.length; t++)
+         for(int s = 0; s < 8; s++)
+         {
+            int[] squares = new int[PATTERNS[t].length];
+            for(int x = 0; x < squares.length; x++)
+               squares[x] = OthelloSymmetry.transformSquare(PATTERNS[t][x],
+                  s);
+            if(!isNew(squares, instances, count))
+               continue;
+            instances[count] = squares;
+            offsets[count++] = OFFSETS[t];
+         }
+      INSTANCES = count;
+      INSTANCE_OFFSETS = Arrays.copyOf(offsets, count);
+      int[] through = new int[64];
+      for(int i = 0; i < count; i++)
+         for(int sq : instances[i])
+            through[sq]++;
+      for(int sq = 0; sq < 64; sq++)
+      {
+         SQUARE_INSTANCES[sq] = new int[through[sq]];
+         SQUARE_POWERS[sq] = new int[through[sq]];
+         through[sq] = 0;
+      }
+      for(int i = 0; i < count; i++)
+         for(int x = 0; x < instances[i].length; x++)
+         {
+            int sq = instances[i][x];
+            SQUARE_INSTANCES[sq][through[sq]] = i;
+            SQUARE_POWERS[sq][through[sq]++] = pow3(x);
+         }
+      for(int e = 0; e <= 64; e++)
+         STAGE_OF[e] = Math.min(STAGES - 1, Math.max(0, (60 - e) * STAGES /
+            60));
+
+      DEFAULT_WEIGHTS = new int[STAGES * STAGE_SIZE];
+      for(int t = 0; t < PATTERNS.length; t++)
+         for(int index = 0; index < pow3(PATTERNS[t].length); index++)
+         {
+            int w = 0;
+            for(int x = 0, i = index; x < PATTERNS[t].length; x++, i /= 3)
+            {
+               int sq = PATTERNS[t][x];
+               int share = SQUARE_VALUES[sq] * SCALE / SQUARE_INSTANCES[sq]
+                  .length;
+               if(i % 3 == 1)
+                  w += share;
+               else if(i % 3 == 2)
+                  w -= share;
+            }
+            for(int s = 0; s < STAGES; s++)
+               DEFAULT_WEIGHTS[s * STAGE_SIZE + OFFSETS[t] + index] = w;
+         }
+      for(int s = 0; s < STAGES; s++)
+      {
+         DEFAULT_WEIGHTS[s * STAGE_SIZE + MOBILITY] = MOBILITY_VALUE * SCALE;
+         DEFAULT_WEIGHTS[s * STAGE_SIZE + FRONTIER] = FRONTIER_VALUE * SCALE;
+      }
+   }
+   /**
+   * The weights of every stage, STAGE_SIZE for each
+   */
+   private final int[] weights;
+   /**
+   * The base 3 number read from each pattern, plus where the weights of
+   * the pattern start within a stage
+   */
+   private final int[] indexes = INSTANCE_OFFSETS.clone();
+   /**
+   * Whether or not the first player is to move
+   */
+   private boolean firstToMove = true;
+
+   /**
+   * Constructs an OthelloEvaluation with the default weights
+   */
+   public OthelloEvaluation()
+   {
+      this(DEFAULT_WEIGHTS);
+   }
+   /**
+   * Constructs an OthelloEvaluation with certain weights
+   * @param w the weights of every stage, STAGE_SIZE for each, in the
+   * order of the stages from the start of the game; the array is shared,
+   * not copied
+   * @throws IllegalArgumentException if there are not STAGES * STAGE_SIZE
+   * weights
+   */
+   public OthelloEvaluation(int[] w)
+   {
+      if(w.length != STAGES * STAGE_SIZE)
+         throw new IllegalArgumentException("Expected " + STAGES * STAGE_SIZE
+            + " weights, not " + w.length);
+      weights = w;
+   }
+   /**
+   * Returns a copy of the default weights, made from the old square table
+   * @return the weights of every stage, STAGE_SIZE for each
+   */
+   public static int[] defaultWeights()
+   {
+      return DEFAULT_WEIGHTS.clone();
+   }
+   /**
+   * Returns the weights used by this evaluation
+   * @return the weights of every stage, STAGE_SIZE for each; the array is
+   * shared, not copied
+   */
+   public int[] getWeights()
+   {
+      return weights;
+   }
+   /**
+   * Reads weights from a file written by save. The file is mapped into
+   * memory rather than read through a stream, so loading is quick.
+   * @param path the file
+   * @return the weights of every stage, STAGE_SIZE for each
+   * @throws IOException if the file cannot be read, or was written for
+   * different patterns or stages
+   */
+   public static int[] load(Path path) throws IOException
+   {
+      try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+      {
+         IntBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+            channel.size()).asIntBuffer();
+         if(in.remaining() < 4 || in.get() != MAGIC || in.get() != VERSION)
+            throw new IOException(path + " is not a file of weights");
+         if(in.get() != STAGES || in.get() != STAGE_SIZE ||
+            in.remaining() != STAGES * STAGE_SIZE)
+            throw new IOException(path + " has weights for other patterns");
+         int[] w = new int[STAGES * STAGE_SIZE];
+         in.get(w);
+         return w;
+      }
+   }
+   /**
+   * Writes weights to a file, which can be read back by load
+   * @param path the file
+   * @param w the weights of every stage, STAGE_SIZE for each
+   * @throws IOException if the file cannot be written
+   */
+   public static void save(Path path, int[] w) throws IOException
+   {
+      ByteBuffer out = ByteBuffer.allocate(4 * (4 + w.length));
+      out.putInt(MAGIC).putInt(VERSION).putInt(STAGES).putInt(STAGE_SIZE);
+      out.asIntBuffer().put(w);
+      out.rewind();
+      try(FileChannel channel = FileChannel.open(path,
+         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         while(out.hasRemaining())
+            channel.write(out);
+      }
+   }
+   /**
+   * Finds the weight used for the same arrangement of chips as another
+   * weight, but with the colors swapped. The value of one must be the
+   * negative of the other, since the same weights are used for both
+   * players.
+   * @param i the index of a weight, within all the stages
+   * @return the index of the weight with the colors swapped, or -1 for the
+   * mobility and frontier weights
+   */
+   public static int swapColors(int i)
+   {
+      int stage = i / STAGE_SIZE * STAGE_SIZE, index = i % STAGE_SIZE;
+      if(index >= MOBILITY)
+         return -1;
+      int t = PATTERNS.length - 1;
+      while(OFFSETS[t] > index)
+         t--;
+      index -= OFFSETS[t];
+      int swapped = 0;
+      for(int p = 1; index != 0; index /= 3, p *= 3)
+         swapped += p * ((3 - index % 3) % 3);
+      return stage + OFFSETS[t] + swapped;
+   }
+   /**
+   * Finds the weights of the patterns used to evaluate a position, so they
+   * can be fitted to the results of games
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @param features filled with the index of the weight of each pattern
+   * within all the stages, INSTANCES of them, with the player to move as
+   * the first player
+   * @return the index of the first weight of the position's stage
+   */
+   public int getFeatures(long me, long opp, int[] features)
+   {
+      setPosition(me, opp);
+      int stage = STAGE_OF[Long.bitCount(~(me | opp))] * STAGE_SIZE;
+      for(int i = 0; i < INSTANCES; i++)
+         features[i] = stage + indexes[i];
+      return stage;
+   }
+   /**
+   * Finds how many more moves the current player has than the opponent
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return the difference in the number of legal moves
+   */
+   public static int mobility(long me, long opp)
+   {
+      return Long.bitCount(OthelloBitboard.legalMoves(me, opp)) -
+         Long.bitCount(OthelloBitboard.legalMoves(opp, me));
+   }
+   /**
+   * Finds how many more chips next to empty squares the current player has
+   * than the opponent
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return the difference in the number of frontier chips
+   */
+   public static int frontier(long me, long opp)
+   {
+      long frontier = OthelloBitboard.neighbours(~(me | opp));
+      return Long.bitCount(me & frontier) - Long.bitCount(opp & frontier);
+   }
+   /**
+   * Reads the patterns of a position from scratch, making the player to
+   * move the first player
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   */
+   public void setPosition(long me, long opp)
+   {
+      System.arraycopy(INSTANCE_OFFSETS, 0, indexes, 0, INSTANCES);
+      firstToMove = true;
+      for(long b = me; b != 0; b &= b - 1)
+         add(Long.numberOfTrailingZeros(b), 1);
+      for(long b = opp; b != 0; b &= b - 1)
+         add(Long.numberOfTrailingZeros(b), 2);
+   }
+   /**
+   * Updates the patterns for a move by the player to move
+   * @param sq the square played on (row * 8 + col)
+   * @param flips the chips captured by the move
+   */
+   public void play(int sq, long flips)
+   {
+      add(sq, firstToMove ? 1 : 2);
+      int change = firstToMove ? -1 : 1;
+      for(; flips != 0; flips &= flips - 1)
+         add(Long.numberOfTrailingZeros(flips), change);
+      firstToMove = !firstToMove;
+   }
+   /**
+   * Takes back the last move, given in the same way it was played
+   * @param sq the square played on (row * 8 + col)
+   * @param flips the chips captured by the move
+   */
+   public void undo(int sq, long flips)
+   {
+      firstToMove = !firstToMove;
+      add(sq, firstToMove ? -1 : -2);
+      int change = firstToMove ? 1 : -1;
+      for(; flips != 0; flips &= flips - 1)
+         add(Long.numberOfTrailingZeros(flips), change);
+   }
+   /**
+   * Passes the turn of the player to move, or takes back a pass
+   */
+   public void pass()
+   {
+      firstToMove = !firstToMove;
+   }
+   /**
+   * Estimates the score of the current position for the player to move,
+   * which must be the position given by me and opp
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the estimated score, in points
+   */
+   public int evaluate(long me, long opp)
+   {
+      int stage = STAGE_OF[Long.bitCount(~(me | opp))] * STAGE_SIZE;
+      int value = 0;
+      for(int i = 0; i < INSTANCES; i++)
+         value += weights[stage + indexes[i]];
+      if(!firstToMove)
+         value = -value;
+      value += weights[stage + MOBILITY] * mobility(me, opp);
+      value += weights[stage + FRONTIER] * frontier(me, opp);
+      return value / SCALE;
+   }
+   /**
+   * Changes the digit of a square in every pattern through it
+   * @param sq the square
+   * @param change the amount the digit changes by
+   */
+   private void add(int sq, int change)
+   {
+      int[] instances = SQUARE_INSTANCES[sq], powers = SQUARE_POWERS[sq];
+      for(int x = 0; x < instances.length; x++)
+         indexes[instances[x]] += change * powers[x];
+   }
+   /**
+   * Checks whether a pattern covers a different set of squares from every
+   * pattern found so far
+   * @param squares the squares of the pattern
+   * @param found the patterns found so far
+   * @param count the number of patterns found so far
+   * @return whether or not the pattern is new
+   */
+   private static boolean isNew(int[] squares, int[][] found, int count)
+   {
+      long bits = 0;
+      for(int sq : squares)
+         bits |= 1L << sq;
+      for(int i = 0; i < count; i++)
+      {
+         long other = 0;
+         for(int sq : found[i])
+            other |= 1L << sq;
+         if(other == bits)
+            return false;
+      }
+      return true;
+   }
+   /**
+   * Finds a power of 3
+   * @param n the exponent
+   * @return 3 to the power of n
+   */
+   private static int pow3(int n)
+   {
+      int p = 1;
+      for(int x = 0; x < n; x++)
+         p *= 3;
+      return p;
+   }
+}
@@ -0,0 +1,306 @@
+import java.util.Arrays;
+/**
+ *  An OthelloGame knows the rules of a single game of Othello: whose turn it
+ *  is, which moves are legal, when a player must pass, how many chips each
+ *  player has, and when and by whom the game has been won. It keeps the
+ *  moves played so far, along with the chips each one captured, so moves
+ *  can be taken back and played again at once by an exclusive or of the
+ *  captured chips, without replaying the game. It has nothing to do with
+ *  how the game is shown, so games can be played without a window, such as
+ *  by an OthelloGameboard or by AI-vs-AI matches on a server. Colors are
+ *  given by the same index values used by the gameboard: 1 for black and 2
+ *  for white.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloGame
+{
+   /**
+   * Returned by getWinner if the game has not ended
+   */
+   public static final int NONE = 0;
+   /**
+   * Returned by getWinner if the game ended in a tie
+   */
+   public static final int TIE = 3;
+   /**
+   * The position the game started from
+   */
+   private OthelloPosition start;
+   /**
+   * The current position of the game
+   */
+   private OthelloPosition position;
+   /**
+   * The moves played so far, including passes
+   */
+   private byte[] moves = new byte[64];
+   /**
+   * The chips captured by each move played so far, and by each move that
+   * can be played again
+   */
+   private long[] flips = new long[64];
+   /**
+   * The number of moves played so far
+   */
+   private int moveCount;
+   /**
+   * The number of moves played so far plus the number of moves taken back
+   * that can be played again
+   */
+   private int redoCount;
+   /**
+   * The index value of the color of the player who resigned, or 0 if
+   * neither has
+   */
+   private int resigned;
+
+   /**
+   * Constructs an OthelloGame from the usual starting position
+   */
+   public OthelloGame()
+   {
+      this(OthelloPosition.START);
+   }
+   /**
+   * Constructs an OthelloGame from a certain position
+   * @param p the position the game starts from
+   */
+   public OthelloGame(OthelloPosition p)
+   {
+      start = position = p;
+   }
+   /**
+   * Starts the game again from the usual starting position
+   */
+   public void reset()
+   {
+      reset(OthelloPosition.START);
+   }
+   /**
+   * Starts the game again from a certain position, forgetting all moves
+   * @param p the position the game starts from
+   */
+   public void reset(OthelloPosition p)
+   {
+      start = position = p;
+      moveCount = redoCount = resigned = 0;
+   }
+   /**
+   * Returns the current position of the game
+   * @return the current position
+   */
+   public OthelloPosition getPosition()
+   {
+      return position;
+   }
+   /**
+   * Returns the position the game started from
+   * @return the starting position
+   */
+   public OthelloPosition getStart()
+   {
+      return start;
+   }
+   /**
+   * Returns the index value of the color of the player to move
+   * @return 1 if it is black's turn, 2 if it is white's
+   */
+   public int getColorToMove()
+   {
+      return position.getColorToMove();
+   }
+   /**
+   * Finds all the squares the player to move can legally play on
+   * @return a bitboard with a bit set for every legal move
+   */
+   public long legalMoves()
+   {
+      return position.legalMoves();
+   }
+   /**
+   * Returns whether or not the player to move has no legal moves, and must
+   * pass their turn to the other player
+   * @return whether or not the player to move must pass
+   */
+   public boolean mustPass()
+   {
+      return !isGameOver() && position.legalMoves() == 0;
+   }
+   /**
+   * Plays a move for the player to move; PASS is only allowed when the
+   * player has no legal moves
+   * @param move the move to be played
+   * @return a bitboard of the chips captured by the move
+   * @throws IllegalArgumentException if the move is not legal
+   * @throws IllegalStateException if the game is over
+   */
+   public long play(byte move)
+   {
+      if(isGameOver())
+         throw new IllegalStateException("The game is over");
+      if(!position.isLegal(move))
+         throw new IllegalArgumentException("Illegal move: " +
+            OthelloMove.toString(move));
+      long f = 0;
+      if(move != OthelloMove.PASS)
+         f = position.flips(move);
+      position = position.play(move);
+      if(moveCount == moves.length)
+      {
+         moves = Arrays.copyOf(moves, moves.length * 2);
+         flips = Arrays.copyOf(flips, flips.length * 2);
+      }
+      //playing the move that was taken back keeps the moves after it
+      if(moveCount == redoCount || moves[moveCount] != move)
+         redoCount = moveCount + 1;
+      moves[moveCount] = move;
+      flips[moveCount++] = f;
+      return f;
+   }
+   /**
+   * Returns whether or not there is a move to take back
+   * @return whether or not any moves have been played
+   */
+   public boolean canUndo()
+   {
+      return moveCount > 0;
+   }
+   /**
+   * Takes back the last move played, which can then be played again with
+   * redo until a different move is played. If a player had resigned, the
+   * resignation is taken back as well.
+   * @return the move taken back
+   * @throws IllegalStateException if there is nothing to take back
+   */
+   public byte undo()
+   {
+      if(moveCount == 0)
+         throw new IllegalStateException("No moves to take back");
+      resigned = 0;
+      byte move = moves[--moveCount];
+      //the player who moved is now the opponent
+      long f = flips[moveCount];
+      long mover = position.getOpponent() ^ f;
+      if(move != OthelloMove.PASS)
+         mover ^= 1L << move;
+      position = position(mover, position.getMover() ^ f,
+         !position.isBlackToMove());
+      return move;
+   }
+   /**
+   * Returns whether or not there is a move that was taken back to play
+   * again
+   * @return whether or not redo can be called
+   */
+   public boolean canRedo()
+   {
+      return moveCount < redoCount && resigned == 0;
+   }
+   /**
+   * Plays again the last move taken back
+   * @return the move played
+   * @throws IllegalStateException if no move has been taken back since
+   * the last move was played
+   */
+   public byte redo()
+   {
+      if(!canRedo())
+         throw new IllegalStateException("No moves to play again");
+      byte move = moves[moveCount];
+      long f = flips[moveCount++];
+      long mover = position.getMover() ^ f;
+      if(move != OthelloMove.PASS)
+         mover ^= 1L << move;
+      position = position(position.getOpponent() ^ f, mover,
+         !position.isBlackToMove());
+      return move;
+   }
+   /**
+   * Creates a position from the chips of the player to move and of the
+   * opponent
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @param blackMoves whether or not it is black's turn
+   * @return the position
+   */
+   private static OthelloPosition position(long me, long opp,
+   boolean blackMoves)
+   {
+      return blackMoves ? new OthelloPosition(me, opp, true) :
+         new OthelloPosition(opp, me, false);
+   }
+   /**
+   * Passes the turn of the player to move, who must have no legal moves
+   * @throws IllegalArgumentException if the player has a legal move
+   * @throws IllegalStateException if the game is over
+   */
+   public void pass()
+   {
+      play(OthelloMove.PASS);
+   }
+   /**
+   * Resigns the game for the player to move
+   * @throws IllegalStateException if the game is already over
+   */
+   public void resign()
+   {
+      if(isGameOver())
+         throw new IllegalStateException("The game is over");
+      resigned = position.getColorToMove();
+   }
+   /**
+   * Returns whether or not the game has ended, either because neither
+   * player can move or because a player resigned
+   * @return whether or not the game is over
+   */
+   public boolean isGameOver()
+   {
+      return resigned != 0 || position.isGameOver();
+   }
+   /**
+   * Returns the winner of the game
+   * @return 1 if black won, 2 if white won, TIE for a tie, or NONE if the
+   * game is not over
+   */
+   public int getWinner()
+   {
+      if(resigned != 0)
+         return 3 - resigned;
+      if(!isGameOver())
+         return NONE;
+      int black = position.count(1), white = position.count(2);
+      if(black == white)
+         return TIE;
+      return black > white ? 1 : 2;
+   }
+   /**
+   * Returns the number of chips a player has
+   * @param color the index value of the player's color
+   * @return the number of chips of that color
+   */
+   public int getChips(int color)
+   {
+      return position.count(color);
+   }
+   /**
+   * Returns the number of moves played so far, including passes
+   * @return the number of moves played
+   */
+   public int getMoveCount()
+   {
+      return moveCount;
+   }
+   /**
+   * Returns one of the moves played so far
+   * @param i the index of the move, starting at 0 for the first move
+   * @return the move
+   */
+   public byte getMove(int i)
+   {
+      if(i < 0 || i >= moveCount)
+         throw new IndexOutOfBoundsException("No move " + i);
+      return moves[i];
+   }
+}
@@ -2,86 +2,108 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
-import java.util.Scanner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 /**
- * OthelloGameboard isa JPanel that knows information regarding the current 
- * Othello game such as the number of chips each player has and who's turn 
- * is currently is. It displays the current pieces for each player, updates 
- * the scoreboard as needed, conducts moves as specified by the human player 
- * or OthelloAI, and resets the gameboard as needed.
+ * OthelloGameboard is a JComponent that shows the current Othello game, 
+ * whose rules are kept by an OthelloGame. It displays the current pieces for 
+ * each player, updates the scoreboard as needed, conducts moves as specified 
+ * by the human player or OthelloAI, and resets the gameboard as needed.
+ * 
+ * The board is painted straight from the game: the chips of the current 
+ * position, the legal moves of the player to move and the chips of the last 
+ * move still turning over. Nothing about the game is kept in the widgets, 
+ * and when squares change only those squares are repainted. A single mouse 
+ * listener finds the square under the mouse from its position.
  * 
  * @author Nathan Harbison / Max White
  * @version 1.0
 */
-public class OthelloGameboard extends JPanel
+public class OthelloGameboard extends JComponent
 {
    /**
-   * An array containing all colors used by the JButtons on the gameboard
+   * An array containing all colors used to paint the gameboard: the board, 
+   * then the chips of each player
    */
    private final Color[] colors = {Color.GREEN.darker(), Color.BLACK, 
    Color.WHITE};
    /**
-   * The index value of the current player's color
+   * The color of the lines between the squares
    */
-   private int currColorIndex;
+   private static final Color LINE_COLOR = Color.GRAY;
    /**
-   * The amount of turns that have been skipped consecutively
+   * The game being shown, which knows the current arrangement of chips, 
+   * whose turn it is and when the game is over
    */
-   private int countNoTurns = 0;
+   private OthelloGame game = new OthelloGame();
    /**
-   * A matrix of JButtons that each represent a certain piece on the gameboard
+   * A bitboard of all possible moves for the current player
    */
-   private JButton [][] board = new JButton[8][8];
+   private long currMoves;
    /**
-   * An int matrix that represents the JButton matrix, with each index the index 
-   * value of the corresponding JButton's color
+   * A bitboard of the moves the human player can click on, which are the 
+   * possible moves on a human player's turn and none otherwise
    */
-   private int[][] matrix = new int[8][8];
+   private long clickable;
    /**
-   * An int matrix that consists of all possible moves for the current player
+   * Whether or not the game is being played by two human players
    */
-   private int[][] currPosMoves = new int[0][0];
+   private boolean twoPlayers;
    /**
-   * An int matrix that mimics the JButton matrix and contains the index value 
-   * of a move located the index of starting position of that move
+   * The scoreboard adjacently contained within the OthelloPanel
    */
-   private int[][] currMoves = new int[8][8];
+   private OthelloScoreboard s;
    /**
-   * Whether or not the game is being played by two human players
+   * The OthelloPanel the gameboard is contained in
    */
-   private boolean twoPlayers;
+   private OthelloPanel p;
    /**
-   * The current number of chips player one has 
+   * How fast moves are shown
    */
-   private int p1Chips;
+   private Speed speed = Speed.NORMAL;
    /**
-   * The number of chips player two has
+   * Executes the AI's move after a delay set by the speed
    */
-   private int p2Chips;
+   private Timer AImover = new Timer(speed.aiDelay, new AIMover());
    /**
-   * The scoreboard adjacently contained within the OthelloPanel
+   * The move the AI is currently thinking about, or null if it is not 
+   * thinking
    */
-   private OthelloScoreboard s;
+   private CompletableFuture<Byte> aiMove;
    /**
-   * The OthelloPanel the gameboard is contained in
+   * The time between frames of the animation of a move, in milliseconds
    */
-   private OthelloPanel p;
+   private static final int FRAME_TIME = 16;
    /**
-   * Executes the AI's move after a certain specified delay
+   * Shows the chips captured by the last move turning over, all at once
    */
-   private Timer AImover = new Timer(3000, new AIMover());
+   private Mover flipper = new Mover();
    /**
-   * Executes a move with a delay between each piece being captured
+   * Draws each frame of the animation of the last move
    */
-   private Timer mover = new Timer(500, new Mover());
+   private Timer mover = new Timer(FRAME_TIME, flipper);
    /**
-   * The current move to be executed
+   * The game to be loaded, or null if a new game is started
    */
-   private int[] move;
+   private OthelloSavedGame saved;
    /**
-   * Contains the game to be loaded
+   * The archive of past games whose results after each move are shown when 
+   * the mouse is over the move, if it has a position index
    */
-   private Scanner scan;
+   private static final String ARCHIVE_FILE = "othello.games";
+   /**
+   * The positions of the past games, or null if there are none
+   */
+   private OthelloPositionIndex positions;
+   /**
+   * The results of the past games after each possible move, shown when the 
+   * mouse is over the move, or null if there are no past games
+   */
+   private OthelloPositionIndex.Stats[] stats;
    
    /**
    * Constructs an OthelloScoreboard that responds accordingly depending on 
@@ -93,32 +115,28 @@ public class OthelloGameboard extends JPanel
    * players
    * @param black if two player, whether or not the human player's color is 
    * black or white
-   * @param sca Scanner object containing the information of a loaded game; null if not
+   * @param sav the game to be loaded; null if not
    */
    public OthelloGameboard (OthelloPanel pa, OthelloScoreboard sc, 
-   boolean twoPlayer, boolean black, Scanner sca)
+   boolean twoPlayer, boolean black, OthelloSavedGame sav)
    {
-      scan = sca;
+      saved = sav;
       s = sc;
       p = pa;
-      p1Chips = p2Chips = 2;
-      setLayout(new GridLayout(8, 8, 2, 2));
-      for(int x = 0; x < board.length; x++)
-         for(int y = 0; y < board[0].length; y++)
-         {
-            board[x][y] = new JButton();
-            board[x][y].setBackground(colors[0]);
-            board[x][y].addActionListener(new Piece(x, y));
-            add(board[x][y]);
+      setOpaque(true);
+      addMouseListener(new Clicker());
+      twoPlayers = twoPlayer;
+      Path archive = Paths.get(ARCHIVE_FILE);
+      if(Files.exists(OthelloPositionIndex.indexPath(archive)))
+         try {
+            positions = new OthelloPositionIndex(archive);
+            ToolTipManager.sharedInstance().registerComponent(this);
+         } catch(IOException e) {
+            e.printStackTrace();
          }
       setUpCenter();
-      if(scan != null)
+      if(saved != null)
          loadGame();
-      else
-      { 
-         currColorIndex = 2;
-         twoPlayers = twoPlayer;
-      }
       if(!twoPlayer)
       {
          OthelloAI.setFirst(!black);
@@ -135,32 +153,124 @@ public class OthelloGameboard extends JPanel
    */
    public void reset()
    {
-      mover.stop();
-      AImover.stop();
-      for(int x = 0; x < board.length; x++)
-         for(int y = 0; y < board[0].length; y++)
-         {
-            board[x][y].setEnabled(false);
-            matrix[x][y] = 0;
-            board[x][y].setBackground(colors[0]);
-         }
+      stopMoving();
+      clickable = 0;
       setUpCenter();
-      currColorIndex = 2;
-      p1Chips = p2Chips = 2;
       setUpCurrMoves();
-      if(!OthelloAI.isFirst() && !twoPlayers)
+      showScore();
+      if(twoPlayers || !OthelloAI.isFirst())
+         p.setButtons(true);
+   }
+   /**
+   * Sets how fast moves are shown: how long captured chips take to turn 
+   * over and how long the AI waits before moving
+   * @param sp the speed
+   */
+   public void setSpeed(Speed sp)
+   {
+      speed = sp;
+   }
+   /**
+   * Returns how fast moves are shown
+   * @return the speed
+   */
+   public Speed getSpeed()
+   {
+      return speed;
+   }
+   /**
+   * Stops the animation of the last move, showing its captured chips as 
+   * they are now, and stops the AI if it is thinking or pondering
+   */
+   private void stopMoving()
+   {
+      flipper.finish();
+      AImover.stop();
+      cancelAIMove();
+      OthelloAI.stopPondering();
+   }
+   /**
+   * Starts the AI's turn: it moves after a delay set by the speed, or as 
+   * soon as the last move has been shown if it guessed that move while 
+   * pondering, since its answer is then ready
+   */
+   private void startAI()
+   {
+      AImover.setInitialDelay(OthelloAI.isPonderHit(game.getPosition()) ? 
+         speed.flipTime : speed.aiDelay);
+      AImover.start();
+      p.setButtons(false);
+   }
+   /**
+   * Starts the AI pondering if it is the human player's turn in a one 
+   * player game
+   */
+   private void startPondering()
+   {
+      if(!twoPlayers && !game.isGameOver() && game.getColorToMove() != 
+      OthelloAI.getColor())
+         OthelloAI.startPondering(game.getPosition());
+   }
+   /**
+   * Takes back the last move, and in a one player game every move back to 
+   * the human player's last turn, showing the game as it was then
+   */
+   public void undoMove()
+   {
+      stopMoving();
+      if(game.canUndo())
+         game.undo();
+      while(game.canUndo() && (game.mustPass() || (!twoPlayers && 
+      game.getColorToMove() == OthelloAI.getColor())))
+         game.undo();
+      showGame();
+   }
+   /**
+   * Plays again the last move taken back, and in a one player game every 
+   * move taken back up to the human player's next turn
+   */
+   public void redoMove()
+   {
+      stopMoving();
+      if(game.canRedo())
+         game.redo();
+      while(game.canRedo() && (game.mustPass() || (!twoPlayers && 
+      game.getColorToMove() == OthelloAI.getColor())))
+         game.redo();
+      showGame();
+   }
+   /**
+   * Shows the game as it is after moves are taken back or played again, 
+   * starting the AI if it is to move
+   */
+   private void showGame()
+   {
+      showPosition();
+      setUpCurrMoves();
+      showScore();
+      if(twoPlayers)
+         return;
+      if(game.getColorToMove() != OthelloAI.getColor())
+      {
          p.setButtons(true);
+         startPondering();
+      }
+      else if(!OthelloAI.isFirst())
+         startAI();
    }
    /**
    * Resigns the game for the current player, updating the scoreboard 
-   * appropriately and resetting the board
+   * appropriately and resetting the board; if the game is already over, 
+   * its result has been counted and the board is only reset
    */
    public void resignGame()
    {
-      if(currColorIndex == 2)
-         s.winLoss(1);
-      else
-         s.winLoss(2);
+      stopMoving();
+      if(!game.isGameOver())
+      {
+         game.resign();
+         s.winLoss(game.getWinner());
+      }
       reset();
    }
    /**
@@ -169,99 +279,73 @@ public class OthelloGameboard extends JPanel
    */
    private void setUpCenter()
    {
-      for(int x = 3; x <= 4; x++)
-         for(int y = 3; y <= 4; y++)
-         {
-            if(x == y)
-            {
-               board[x][y].setBackground(colors[2]);
-               matrix[x][y] = 2;
-            }
-            else
-            {
-               board[x][y].setBackground(colors[1]);
-               matrix[x][y] = 1;
-            }
-            board[x][y].setEnabled(false);
-         }
+      game.reset();
+      showPosition();
+   }
+   /**
+   * Repaints the whole gameboard, after the position has changed other than 
+   * by a move
+   */
+   private void showPosition()
+   {
+      repaint();
    }
    /**
    * Finds all possible moves for the current player, and if they have none, 
    * skips to the next player and displays a message. If this happens twice, 
-   * the game ends. Otherwise, it makes the JButton for each of the current 
-   * possible moves for the player a darker color, and if it is a human 
-   * player's turn, makes these JButtons clickable.
+   * the game ends. Otherwise, it shows each of the current possible moves 
+   * for the player as a darker square, and if it is a human player's turn, 
+   * makes these squares clickable.
    */
    private void setUpCurrMoves()
    {
-      currPosMoves = OthelloAI.legalMoves(matrix, currColorIndex == 2);
-      if(currPosMoves.length == 0)
+      currMoves = game.legalMoves();
+      if(currMoves == 0)
       {
+         if(game.isGameOver())
+         {
+            endGame();
+            return;
+         }
          String s = "";
          if(twoPlayers)
          {
-            if(currColorIndex == 1)
-               s = "Player two has no valid moves. Their turn has been skipped.";
-            else
+            if(game.getColorToMove() == 1)
                s = "Player one has no valid moves. Their turn has been skipped.";
+            else
+               s = "Player two has no valid moves. Their turn has been skipped.";
          }
          else
          {
-            if(currColorIndex == OthelloAI.getColor())
+            if(game.getColorToMove() != OthelloAI.getColor())
                s = "You have no valid moves. Your turn has been skipped.";
             else
                s = "The AI has no valid moves. Its turn has been skipped.";
          }
-         if(p1Chips + p2Chips == 64)
-         {
-            endGame();
-            return;
-         }
-         else
-            JOptionPane.showMessageDialog(null, s);
-         countNoTurns++;
-         if(countNoTurns == 2)
-         {
-            endGame();
-            return;
-         }
-         switchColor();
+         JOptionPane.showMessageDialog(null, s);
+         game.pass();
          setUpCurrMoves();
          return;
       } 
-      countNoTurns = 0;
-      for(int x = 0; x < board.length; x++)
-         for(int y = 0; y < board[0].length; y++)
-         {
-            board[x][y].setEnabled(false);
-            currMoves[x][y] = -1;
-         }
-      for(int x = 0; x < currPosMoves.length; x++)
-      {
-         if(twoPlayers || currColorIndex == OthelloAI.getColor())
-            board[currPosMoves[x][0]][currPosMoves[x][1]].setEnabled(true);
-         board[currPosMoves[x][0]][currPosMoves[x][1]].setBackground(
-            colors[0].darker());
-         currMoves[currPosMoves[x][0]][currPosMoves[x][1]] = x;
-      }
-      switchColor();
-      if(OthelloAI.isFirst() && !twoPlayers && currColorIndex == 
+      if(twoPlayers || game.getColorToMove() != OthelloAI.getColor())
+         clickable = currMoves;
+      else
+         clickable = 0;
+      if(positions != null)
+         stats = positions.getMoveStats(game.getPosition());
+      repaintSquares(currMoves);
+      if(OthelloAI.isFirst() && !twoPlayers && game.getColorToMove() == 
       OthelloAI.getColor())
-      {
-         AImover.start();
-         p.setButtons(false);
-      }
+         startAI();
    }
    /**
-   * Switches the color of the current player pieces to the color of the other 
-   * player's pieces
+   * Shows on the scoreboard whose turn it is and how many chips each player 
+   * has
    */
-   private void switchColor()
+   private void showScore()
    {
-      if(currColorIndex == 1)
-         currColorIndex = 2;
-      else
-         currColorIndex = 1;
+      s.update(game.getColorToMove() == 1, game.getChips(1), 
+         game.getChips(2));
    }
    /**
    * Ends the game, updating the scoreboard depending on the number of chips
@@ -269,230 +353,397 @@ public class OthelloGameboard extends JPanel
    */
    private void endGame()
    {
-      int whoWon;
-      if(p1Chips == p2Chips)
-         whoWon = 3;
-      else if(p1Chips > p2Chips)
-         whoWon = 1;
-      else
-         whoWon = 2;
-      s.winLoss(whoWon);
-      mover.stop();
+      s.winLoss(game.getWinner());
       reset();
    }
    /**
-   * A Piece knows the row and column of its corresponding button
-   * and executes the move associated with this button
+   * A Clicker finds the square the human player clicks on and executes the 
+   * move there, if it is one they can make
    */
-   private class Piece implements ActionListener
+   private class Clicker extends MouseAdapter
    {
       /**
-      * Its corresponding button's row
+      * Executes the move on the square under the mouse when the button is 
+      * released, as a JButton would
+      * @param e MouseEvent object the MouseListener interface needs
       */
-      private int r;
-      /**
-      * Its corresponding button's column
-      */
-      private int c;
-      /**
-      * Constructs a Piece with a specified row and column value
-      * @param x the row value
-      * @param y the column value
-      */
-      public Piece(int x, int y)
+      public void mouseReleased(MouseEvent e)
       {
-         r = x;
-         c = y;
+         int sq = squareAt(e.getX(), e.getY());
+         if(!SwingUtilities.isLeftMouseButton(e) || sq < 0 || 
+         (clickable >>> sq & 1) == 0)
+            return;
+         clickable = 0;
+         executeMove((byte)sq);
       }
+   }
+   /**
+   * A AIMover starts the AI thinking about its best move after a certain 
+   * delay, and executes the move once it has been found
+   */
+   private class AIMover implements ActionListener
+   {
       /**
-      * Executes the move found by the index value (as specified by the
-      * corresponding index currMoves) of all current possible moves
+      * Starts the AI thinking on its own thread, so that the gameboard stays 
+      * responsive, and executes its move back on this thread. If the AI 
+      * fails, the error is shown, and if it fails or is stopped other than 
+      * by the gameboard, the player can take back, save or resign the game.
       * @param e ActionEvent object the Action Listener interface needs
       */
       public void actionPerformed(ActionEvent e)
       {
-         for(int x = 0; x < board.length; x++)
-            for(int y = 0; y < board[0].length; y++)
-               board[x][y].setEnabled(false);
-         executeMove(currPosMoves[currMoves[r][c]]);
+         AImover.stop();
+         CompletableFuture<Byte> f = OthelloAI.findMoveAsync(game.getPosition(), 
+            new AIProgress());
+         aiMove = f;
+         f.whenCompleteAsync((m, x) -> {
+            if(aiMove != f)
+               return;
+            aiMove = null;
+            s.setStatus("");
+            if(x != null)
+            {
+               if(x instanceof CompletionException && x.getCause() != null)
+                  x = x.getCause();
+               if(!(x instanceof CancellationException))
+               {
+                  x.printStackTrace();
+                  JOptionPane.showMessageDialog(null, 
+                     "The AI could not find a move: " + x);
+               }
+               p.setButtons(true);
+            }
+            else if(m != OthelloMove.PASS)
+               executeMove(m);
+         }, SwingUtilities::invokeLater);
       }
    }
    /**
-   * A AIMover executes the AI's best move after a certain delay
+   * An AIProgress shows how far the AI has looked ahead while it thinks
    */
-   private class AIMover implements ActionListener
+   private class AIProgress implements OthelloSearchListener
    {
       /**
-      * Executes the AI's best move based on its net chip gain
-      * @param e ActionEvent object the Action Listener interface needs
+      * Shows the depth the AI has reached and the best move it has found, 
+      * passing the update on to the Event Dispatch Thread
+      * @param depth the depth searched, in plies
+      * @param move the best move found so far
+      * @param score the score of the best move
+      * @param nodes the number of positions looked at so far
       */
-      public void actionPerformed(ActionEvent e)
+      public void progress(int depth, byte move, int score, long nodes)
       {
-         OthelloAI.doAIMove(matrix, board, OthelloGameboard.this);
-         AImover.stop();
+         String text = "Depth " + depth + ": " + OthelloMove.toString(move);
+         SwingUtilities.invokeLater(() -> {
+            if(aiMove != null)
+               s.setStatus(text);
+         });
       }
    }
    /**
-   * Executes a specified move
+   * Stops the AI if it is thinking about a move, discarding the move
+   */
+   private void cancelAIMove()
+   {
+      if(aiMove != null)
+         aiMove.cancel(true);
+      aiMove = null;
+      s.setStatus("");
+   }
+   /**
+   * Executes a specified move, playing it at once and starting the next 
+   * turn while the captured chips are shown turning over. If the move ends 
+   * the game, its result is counted at once, and the board is reset once 
+   * the chips have turned over.
    * @param m the move to be executed
    */
-   public void executeMove(int[] m)
+   public void executeMove(byte m)
    {
-      move = m;
-      if(currColorIndex == 1)
-         p1Chips++;
-      else
-         p2Chips++;
-      s.update(currColorIndex == 1, p1Chips, p2Chips);
-      board[move[0]][move[1]].setBackground(colors[currColorIndex]);
-      board[move[0]][move[1]].setEnabled(false);
-      matrix[move[0]][move[1]] = currColorIndex;
-      mover.start();
+      flipper.finish();
+      int color = game.getColorToMove();
+      long flips = game.getPosition().flips(m);
+      game.play(m);
+      repaintSquares(currMoves | 1L << m);
+      currMoves = clickable = 0;
+      flipper.start(flips, color);
+      if(game.isGameOver())
+      {
+         showScore();
+         s.winLoss(game.getWinner());
+         p.setButtons(false);
+         if(!mover.isRunning())
+            reset();
+         return;
+      }
+      setUpCurrMoves();
+      showScore();
+      if(!OthelloAI.isFirst() && !twoPlayers && game.getColorToMove() == 
+      OthelloAI.getColor())
+         startAI();
+      else if(!twoPlayers && game.getColorToMove() != OthelloAI.getColor())
+      {
+         p.setButtons(true);
+         startPondering();
+      }
    }
    /**
-   * A Mover executes a given move, with a slight delay between
-   * each piece being captured
+   * A Mover shows the chips captured by a move turning over: each narrows 
+   * to its edge in the color of the player who lost it, then widens again 
+   * in the color of the player who captured it. All the chips turn 
+   * together, every frame repainting all of them at once, so a move takes 
+   * the same short time however many chips it captures; at the instant 
+   * speed they turn at once.
    */
    private class Mover implements ActionListener
    {
       /**
-      * The current index value of the array that specifies the move that 
-      * is being looked at
-      */
-      private int x = 2;
-      /**
-      * The row of the starting position of a move
+      * The chips turning over
       */
-      private int row;
+      private long flipping;
       /**
-      * The column of the starting position of a move
+      * The index value of the color of the player who captured them
       */
-      private int col;
+      private int color;
       /**
-      * The current row of the gameboard the Mover object is looking at
+      * When they started turning, from System.nanoTime
       */
-      private int mrow;
+      private long started;
       /**
-      * The current column of the gameboard the Mover object is looking at
+      * How far they have turned, from 0 to 1
       */
-      private int mcol;
+      private double progress;
       /**
-      * Whether or not this is the first piece to be captured
+      * Starts showing captured chips turning over, or shows them turned 
+      * at once at the instant speed
+      * @param flips the chips
+      * @param c the index value of the color of the player who captured 
+      * them
       */
-      private boolean first = true;
+      private void start(long flips, int c)
+      {
+         flipping = flips;
+         color = c;
+         started = System.nanoTime();
+         if(speed.flipTime == 0)
+            finish();
+         else
+         {
+            frame(0);
+            mover.start();
+         }
+      }
       /**
-      * Finds the next piece to be captured and changes it to the current
-      * player's color; if there are no more pieces, the move is ended
+      * Shows the next frame, resetting the board once the chips have turned 
+      * over if the game is over
       * @param e ActionEvent object the Action Listener interface needs
       */
       public void actionPerformed(ActionEvent e)
       {
-         if(first)
-         {
-            first = false;
-            mrow = row = move[0];
-            mcol = col = move[1];
-            matrix[row][col] = currColorIndex;
-         }
-         while(matrix[mrow][mcol] == currColorIndex)
-         {
-            mrow += move[x];
-            mcol += move[x+1];
-         }
-         if(currColorIndex == 1)
+         double t = (System.nanoTime() - started) / 1e6 / speed.flipTime;
+         if(t < 1)
          {
-            p1Chips++;
-            p2Chips--;
-         }
-         else
-         {
-            p1Chips--;
-            p2Chips++;
+            frame(t);
+            return;
          }
-         s.update(currColorIndex == 1, p1Chips, p2Chips);
-         board[mrow][mcol].setBackground(colors[currColorIndex]);
-         board[mrow][mcol].setEnabled(false);
-         matrix[mrow][mcol] = currColorIndex;  
-         try {
-            if(matrix[mrow+move[x]][mcol+move[x+1]] == currColorIndex)
-            {
-               x += 4;  
-               mrow = move[0];
-               mcol = move[1];
-               if(move[x+2] == -1 || x >= move.length)
-                  throw new ArrayIndexOutOfBoundsException();
-            }
-         } catch(ArrayIndexOutOfBoundsException ex) {
-            s.update(currColorIndex == 2, p1Chips, p2Chips);
-            end();
-         } 
+         finish();
+         if(game.isGameOver())
+            reset();
       }
       /**
-      * Ends the move, setting up the current moves for the next player, and if
-      * that player is the AI, executes its move after a delay
+      * Shows the chips turned over and stops the animation, if it is running
       */
-      private void end()
+      private void finish()
       {
-         first = true;
-         x = 2;
-         for(int x = 0; x < currPosMoves.length; x++)
-            if(board[currPosMoves[x][0]][currPosMoves[x][1]].getBackground()
-            .getRGB() == colors[0].darker().getRGB())
-               board[currPosMoves[x][0]][currPosMoves[x][1]].setBackground(
-                  colors[0]);
-         setUpCurrMoves();
-         if(!OthelloAI.isFirst() && !twoPlayers && currColorIndex == 
-         OthelloAI.getColor())
+         mover.stop();
+         frame(1);
+         flipping = 0;
+      }
+      /**
+      * Repaints the chips turning over as they are partway through
+      * @param t how far they have turned, from 0 to 1
+      */
+      private void frame(double t)
+      {
+         progress = t;
+         repaintSquares(flipping);
+      }
+   }
+   /**
+   * Paints the squares of the gameboard that need it: the board, darker 
+   * where the player to move can move, and the chips, narrowed for those 
+   * still turning over
+   * @param g the Graphics object to paint with
+   */
+   protected void paintComponent(Graphics g)
+   {
+      Graphics2D g2 = (Graphics2D)g.create();
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
+         RenderingHints.VALUE_ANTIALIAS_ON);
+      Rectangle clip = g2.getClipBounds();
+      if(clip == null)
+         clip = new Rectangle(getWidth(), getHeight());
+      g2.setColor(LINE_COLOR);
+      g2.fill(clip);
+      OthelloPosition position = game.getPosition();
+      for(int sq = 0; sq < 64; sq++)
+      {
+         Rectangle r = squareBounds(sq);
+         if(!r.intersects(clip))
+            continue;
+         g2.setColor((currMoves >>> sq & 1) != 0 ? colors[0].darker() : 
+            colors[0]);
+         g2.fillRect(r.x + 1, r.y + 1, r.width - 2, r.height - 2);
+         int color = position.getColor(sq / 8, sq % 8);
+         if(color == 0)
+            continue;
+         int inset = r.width / 8, size = r.width - 2 * inset, width = size;
+         if((flipper.flipping >>> sq & 1) != 0)
          {
-            AImover.start();
-            p.setButtons(false);
+            width = (int)(size * Math.abs(1 - 2 * flipper.progress));
+            if(flipper.progress < 0.5)
+               color = 3 - color;
          }
-         else if(!twoPlayers && currColorIndex != OthelloAI.getColor())
-            p.setButtons(true);
-         mover.stop();
+         g2.setColor(colors[color]);
+         g2.fillOval(r.x + inset + (size - width) / 2, r.y + inset, width, 
+            size);
       }
+      g2.dispose();
+   }
+   /**
+   * Finds where a square is painted
+   * @param sq the square (row * 8 + col)
+   * @return the bounds of the square, in pixels
+   */
+   private Rectangle squareBounds(int sq)
+   {
+      int size = Math.min(getWidth(), getHeight()) / 8;
+      int left = (getWidth() - 8 * size) / 2, top = (getHeight() - 8 * size) / 2;
+      return new Rectangle(left + sq % 8 * size, top + sq / 8 * size, size, 
+         size);
+   }
+   /**
+   * Finds the square painted at a point
+   * @param x the x coordinate of the point, in pixels
+   * @param y the y coordinate of the point
+   * @return the square (row * 8 + col), or -1 if the point is off the board
+   */
+   private int squareAt(int x, int y)
+   {
+      int size = Math.min(getWidth(), getHeight()) / 8;
+      if(size == 0)
+         return -1;
+      int col = Math.floorDiv(x - (getWidth() - 8 * size) / 2, size);
+      int row = Math.floorDiv(y - (getHeight() - 8 * size) / 2, size);
+      if(row < 0 || row > 7 || col < 0 || col > 7)
+         return -1;
+      return row * 8 + col;
+   }
+   /**
+   * Repaints only certain squares, such as those changed by a move
+   * @param squares a bitboard of the squares
+   */
+   private void repaintSquares(long squares)
+   {
+      for(; squares != 0; squares &= squares - 1)
+         repaint(squareBounds(Long.numberOfTrailingZeros(squares)));
+   }
+   /**
+   * Returns the results of past games after the possible move under the 
+   * mouse, if there are any
+   * @param e MouseEvent object giving where the mouse is
+   * @return the tooltip, or null for none
+   */
+   public String getToolTipText(MouseEvent e)
+   {
+      int sq = squareAt(e.getX(), e.getY());
+      if(stats == null || sq < 0 || (currMoves >>> sq & 1) == 0 || 
+      stats[sq] == null)
+         return null;
+      return "Past games: " + stats[sq];
    }
    /**
-   * Saves the current game under a certain name, so that it can be accessed later
+   * Saves the current game under a certain name, so that it can be accessed 
+   * later. The AI stops pondering while the game is saved, and starts again 
+   * afterwards.
    */
    public void saveGame()
    {
+      OthelloAI.stopPondering();
       String name = JOptionPane.showInputDialog(null, "What would you like to name the saved game?");
-      PrintWriter outfile = null;
-      try {
-         outfile = new PrintWriter(new FileWriter(name+".txt"));
-      } catch(IOException e) {
-         e.printStackTrace();
-         System.exit(0);
-      }
-      outfile.println(!OthelloAI.isFirst());
-      outfile.println(twoPlayers+"");
-      outfile.println(s.getScore());
-      outfile.println(currColorIndex % 2 + 1); //1 % 2 = 1 + 1 = 2    2 % 2 = 0 + 1 = 1
-      for(int x = 0; x < matrix.length; x++)
-         for(int y = 0; y < matrix[0].length; y++)
-            outfile.println(matrix[x][y]);
-      outfile.close();
+      if(name != null)
+         try {
+            new OthelloSavedGame(game, !OthelloAI.isFirst(), twoPlayers, 
+               s.getStats()).write(Paths.get(name + OthelloSavedGame.EXTENSION));
+         } catch(IOException e) {
+            e.printStackTrace();
+            System.exit(0);
+         }
+      startPondering();
    }
    /**
-   * Loads a game, using the name specified when the game is started
+   * Loads the game given when the gameboard was constructed, carrying on 
+   * from its last move
    */
    public void loadGame()
    {
-      try {
-         s.setScore(scan.next());
-         currColorIndex = scan.nextInt();
-         for(int x = 0; x < matrix.length; x++)
-            for(int y = 0; y < matrix[0].length; y++)
-            {
-               matrix[x][y] = scan.nextInt();
-               board[x][y].setBackground(colors[matrix[x][y]]);
-               if(matrix[x][y] != 0)
-                  board[x][y].setEnabled(false);
-            }
-      } catch(Exception e) {
-         System.out.println("Error: Could not load game.");
-         System.exit(0);
+      s.setStats(saved.getStats());
+      game = saved.getGame();
+      showScore();
+      showPosition();
+   }
+   /**
+   * A Speed is how fast moves are shown: how long the chips captured by a 
+   * move take to turn over, and how long the AI waits before moving so 
+   * that its move can be followed
+   */
+   public enum Speed
+   {
+      SLOW("Slow", 800, 3000),
+      NORMAL("Normal", 300, 1000),
+      FAST("Fast", 120, 250),
+      INSTANT("Instant", 0, 0);
+
+      /**
+      * The name of the speed, as shown on the speed button
+      */
+      private final String name;
+      /**
+      * The time captured chips take to turn over, in milliseconds
+      */
+      private final int flipTime;
+      /**
+      * The time the AI waits before it starts thinking, in milliseconds
+      */
+      private final int aiDelay;
+
+      /**
+      * Constructs a Speed
+      * @param n the name of the speed
+      * @param flip the time captured chips take to turn over
+      * @param delay the time the AI waits before it starts thinking
+      */
+      Speed(String n, int flip, int delay)
+      {
+         name = n;
+         flipTime = flip;
+         aiDelay = delay;
+      }
+      /**
+      * Returns the next faster speed, or the slowest after the fastest, so 
+      * that a button can step through them
+      * @return the next speed
+      */
+      public Speed next()
+      {
+         return values()[(ordinal() + 1) % values().length];
+      }
+      /**
+      * Returns the name of the speed
+      * @return the name
+      */
+      public String toString()
+      {
+         return name;
       }
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,357 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+/**
+ *  OthelloLoadGenerator puts an OthelloServer under load to measure how
+ *  many commands it answers a second and how long each one takes. It opens
+ *  many connections from one thread with a Selector, and each one plays
+ *  random games for as long as the test runs: it asks for the legal moves,
+ *  plays one of them at random, or, some of the time, asks the AI to play,
+ *  and starts another game once one ends. Each connection sends its next
+ *  command as soon as its last one is answered, so the load rises with the
+ *  number of connections.
+ *
+ *  The time from sending each command to reading its answer is counted to
+ *  the microsecond, and once the test is over the number of commands, the
+ *  commands answered a second, the median, 99th and 99.9th percentile and
+ *  longest times, and the number of games played and errors are printed.
+ *  Commands answered while the connections are being opened and for a few
+ *  seconds after are not counted, to leave out the warming up of the JIT
+ *  compiler. Every connection takes a file descriptor on the server and
+ *  one here, so the limit on open files may need raising for large tests.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloLoadGenerator
+{
+   /**
+   * The time after every connection is opened before commands are counted,
+   * in nanoseconds
+   */
+   private static final long WARMUP_TIME = 3000000000L;
+   /**
+   * The longest time counted exactly, in microseconds; longer times are
+   * counted as this
+   */
+   private static final int MAX_MICROS = 10000000;
+   /**
+   * The number of connections being opened at once
+   */
+   private static final int CONNECT_BATCH = 256;
+   /**
+   * For each time in microseconds, the number of commands answered in that
+   * time
+   */
+   private static final int[] latencies = new int[MAX_MICROS + 1];
+   /**
+   * The number of commands counted
+   */
+   private static long answered;
+   /**
+   * The number of games played to the end while commands were counted
+   */
+   private static long games;
+   /**
+   * The number of commands answered with an error
+   */
+   private static long errors;
+   /**
+   * The first error, which is printed
+   */
+   private static String firstError;
+   /**
+   * Whether or not commands are being counted
+   */
+   private static boolean counting;
+
+   /**
+   * Runs a test against a server
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: the host, the port, the number of connections, the
+   * seconds to run for after warming up, and optionally the percentage of
+   * moves asked of the AI (default 0)
+   * @throws IOException if the connections cannot be opened
+   */
+   public static void main(String[] args) throws IOException
+   {
+      if(args.length < 4)
+      {
+         System.out.println("Usage: java OthelloLoadGenerator host port " +
+            "connections seconds [AI percent]");
+         return;
+      }
+      InetSocketAddress address = new InetSocketAddress(args[0],
+         Integer.parseInt(args[1]));
+      int count = Integer.parseInt(args[2]);
+      long time = Long.parseLong(args[3]) * 1000000000L;
+      double ai = args.length > 4 ? Double.parseDouble(args[4]) / 100 : 0;
+
+      Random rand = new Random();
+      Selector selector = Selector.open();
+      Client[] clients = new Client[count];
+      int opened = 0, connecting = 0, connected = 0;
+      long start = 0, end = Long.MAX_VALUE, warm = Long.MAX_VALUE;
+      long began = System.nanoTime();
+      while(System.nanoTime() < end)
+      {
+         for(; opened < count && connecting < CONNECT_BATCH; opened++,
+            connecting++)
+         {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(address);
+            clients[opened] = new Client(channel, rand, ai);
+            channel.register(selector, SelectionKey.OP_CONNECT,
+               clients[opened]);
+         }
+         selector.select(100);
+         long now = System.nanoTime();
+         Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+         while(keys.hasNext())
+         {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Client c = (Client)key.attachment();
+            if(key.isConnectable())
+            {
+               connecting--;
+               connected++;
+               try {
+                  c.channel.finishConnect();
+                  key.interestOps(SelectionKey.OP_READ);
+                  c.send("NEW", now);
+               } catch(IOException e) {
+                  errors++;
+                  if(firstError == null)
+                     firstError = "connect: " + e.getMessage();
+                  key.cancel();
+                  c.channel.close();
+               }
+            }
+            else if(key.isReadable() && !c.read())
+            {
+               key.cancel();
+               c.channel.close();
+            }
+         }
+         if(connected == count && warm == Long.MAX_VALUE)
+         {
+            warm = now + WARMUP_TIME;
+            System.out.printf("%,d connections open in %.1fs%n", count,
+               (now - began) / 1e9);
+         }
+         if(now >= warm && !counting)
+         {
+            counting = true;
+            start = now;
+            end = now + time;
+         }
+      }
+      long elapsed = System.nanoTime() - start;
+      for(Client c : clients)
+         c.channel.close();
+      selector.close();
+      report(elapsed);
+   }
+   /**
+   * Prints the results of the test
+   * @param elapsed the time commands were counted for, in nanoseconds
+   */
+   private static void report(long elapsed)
+   {
+      System.out.printf("%,d commands in %.1fs: %,.0f commands/s, %,d " +
+         "games, %,d errors%n", answered, elapsed / 1e9, answered * 1e9 /
+         elapsed, games, errors);
+      System.out.printf("latency: p50 %s, p99 %s, p99.9 %s, max %s%n",
+         micros(percentile(0.5)), micros(percentile(0.99)),
+         micros(percentile(0.999)), micros(percentile(1)));
+      if(firstError != null)
+         System.out.println("first error: " + firstError);
+   }
+   /**
+   * Finds the time within which a fraction of the commands counted were
+   * answered
+   * @param fraction the fraction of the commands
+   * @return the time in microseconds
+   */
+   private static int percentile(double fraction)
+   {
+      long target = Math.max(1, (long)Math.ceil(answered * fraction));
+      long seen = 0;
+      for(int us = 0; us < latencies.length; us++)
+      {
+         seen += latencies[us];
+         if(seen >= target)
+            return us;
+      }
+      return MAX_MICROS;
+   }
+   /**
+   * Writes a time in the most readable unit
+   * @param us the time in microseconds
+   * @return the time, such as "85us" or "1.25ms"
+   */
+   private static String micros(int us)
+   {
+      return us < 1000 ? us + "us" : String.format("%.2fms", us / 1000.0);
+   }
+
+   /**
+    *  A Client is one connection, playing one random game at a time.
+    **/
+   private static class Client
+   {
+      /**
+      * The connection
+      */
+      private final SocketChannel channel;
+      /**
+      * Chooses the moves
+      */
+      private final Random rand;
+      /**
+      * The fraction of moves asked of the AI
+      */
+      private final double ai;
+      /**
+      * The bytes read but not yet understood as an answer
+      */
+      private final ByteBuffer in = ByteBuffer.allocate(512);
+      /**
+      * The command waiting to be sent
+      */
+      private final ByteBuffer out = ByteBuffer.allocate(512);
+      /**
+      * The first word of the command last sent
+      */
+      private String sent;
+      /**
+      * When the command last sent was sent, from System.nanoTime
+      */
+      private long sentAt;
+      /**
+      * The id of the game being played
+      */
+      private String game;
+
+      /**
+      * Constructs a Client
+      * @param c the connection, which may not have been made yet
+      * @param r chooses the moves
+      * @param a the fraction of moves asked of the AI
+      */
+      private Client(SocketChannel c, Random r, double a)
+      {
+         channel = c;
+         rand = r;
+         ai = a;
+      }
+      /**
+      * Sends a command
+      * @param command the command
+      * @param now the time, from System.nanoTime
+      * @throws IOException if the connection fails
+      */
+      private void send(String command, long now) throws IOException
+      {
+         int space = command.indexOf(' ');
+         sent = space < 0 ? command : command.substring(0, space);
+         sentAt = now;
+         out.clear();
+         out.put(command.getBytes(StandardCharsets.US_ASCII)).put((byte)'\n');
+         out.flip();
+         while(out.hasRemaining())
+            channel.write(out);
+      }
+      /**
+      * Reads the answers that have come, answering each with the next
+      * command
+      * @return false if the connection has closed
+      * @throws IOException if the connection fails
+      */
+      private boolean read() throws IOException
+      {
+         if(channel.read(in) < 0)
+            return false;
+         byte[] bytes = in.array();
+         int start = 0;
+         for(int x = 0; x < in.position(); x++)
+            if(bytes[x] == '\n')
+            {
+               String line = new String(bytes, start, x - start,
+                  StandardCharsets.US_ASCII);
+               start = x + 1;
+               long now = System.nanoTime();
+               if(counting)
+               {
+                  answered++;
+                  latencies[(int)Math.min(MAX_MICROS,
+                     (now - sentAt) / 1000)]++;
+               }
+               answer(line, now);
+            }
+         in.flip().position(start);
+         in.compact();
+         return true;
+      }
+      /**
+      * Sends the next command in answer to the last
+      * @param line the answer to the command last sent
+      * @param now the time, from System.nanoTime
+      * @throws IOException if the connection fails
+      */
+      private void answer(String line, long now) throws IOException
+      {
+         if(!line.startsWith("OK"))
+         {
+            errors++;
+            if(firstError == null)
+               firstError = sent + ": " + line;
+            send(game == null ? "NEW" : "END " + game, now);
+            game = null;
+            return;
+         }
+         String[] words = line.split(" ");
+         switch(sent)
+         {
+            case "NEW":
+               game = words[1];
+               send("LEGAL " + game, now);
+               break;
+            case "LEGAL":
+               if(words.length == 1)
+                  send("END " + game, now);
+               else if(rand.nextDouble() < ai)
+                  send("AI " + game, now);
+               else
+                  send("MOVE " + game + " " + words[1 + rand.nextInt(
+                     words.length - 1)], now);
+               break;
+            case "MOVE":
+            case "AI":
+               if(Arrays.asList(words).contains("OVER"))
+               {
+                  if(counting)
+                     games++;
+                  send("END " + game, now);
+               }
+               else
+                  send("LEGAL " + game, now);
+               break;
+            default:
+               game = null;
+               send("NEW", now);
+         }
+      }
+   }
+}
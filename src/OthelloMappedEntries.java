@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+/**
+ *  OthelloMappedEntries maps the entries of a file into memory, so that
+ *  OthelloBook and OthelloPositionIndex can read them in place however
+ *  large the file is. The entries all have the same size and follow the
+ *  header of the file. A single mapping cannot be larger than 2 GB, so the
+ *  entries are mapped in parts, each holding a whole number of them.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+class OthelloMappedEntries
+{
+   /**
+   * The number of entries in each part of the file mapped into memory
+   */
+   private static final int SEGMENT_ENTRIES = 1 << 26;
+   /**
+   * The parts of the file mapped into memory
+   */
+   private final ByteBuffer[] segments;
+   /**
+   * The size of each entry
+   */
+   private final int entryBytes;
+
+   /**
+   * Maps the entries of a file into memory
+   * @param channel the file, which can be closed once they are mapped
+   * @param start where the first entry starts in the file
+   * @param size the number of entries
+   * @param entry the size of each entry in bytes
+   * @throws IOException if the file cannot be mapped
+   */
+   OthelloMappedEntries(FileChannel channel, long start, long size, int entry)
+   throws IOException
+   {
+      entryBytes = entry;
+      segments = new ByteBuffer[(int)((size + SEGMENT_ENTRIES - 1) /
+         SEGMENT_ENTRIES)];
+      for(int x = 0; x < segments.length; x++)
+      {
+         long first = (long)x * SEGMENT_ENTRIES;
+         long count = Math.min(SEGMENT_ENTRIES, size - first);
+         segments[x] = channel.map(FileChannel.MapMode.READ_ONLY,
+            start + first * entryBytes, count * entryBytes);
+      }
+   }
+   /**
+   * Reads a long from an entry
+   * @param i the index of the entry
+   * @param at where the long starts within the entry, in bytes
+   * @return the long
+   */
+   long getLong(long i, int at)
+   {
+      return segment(i).getLong(offset(i) + at);
+   }
+   /**
+   * Reads an int from an entry
+   * @param i the index of the entry
+   * @param at where the int starts within the entry, in bytes
+   * @return the int
+   */
+   int getInt(long i, int at)
+   {
+      return segment(i).getInt(offset(i) + at);
+   }
+   /**
+   * Returns the part of the file holding an entry
+   * @param i the index of the entry
+   * @return the mapped part of the file
+   */
+   private ByteBuffer segment(long i)
+   {
+      return segments[(int)(i / SEGMENT_ENTRIES)];
+   }
+   /**
+   * Returns where an entry starts within its part of the file
+   * @param i the index of the entry
+   * @return the offset in bytes
+   */
+   private int offset(long i)
+   {
+      return (int)(i % SEGMENT_ENTRIES) * entryBytes;
+   }
+}
@@ -0,0 +1,80 @@
+/**
+ *  OthelloMove holds the methods used to work with moves, which are stored 
+ *  as a single byte: the index of the square played on (row * 8 + col), or 
+ *  PASS if the player had no legal moves. The chips captured by a move are 
+ *  not stored with it, but found from the OthelloPosition it is played in.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public final class OthelloMove
+{
+   /**
+   * The move of a player with no legal moves
+   */
+   public static final byte PASS = -1;
+
+   /**
+   * OthelloMove only holds static methods and cannot be instantiated
+   */
+   private OthelloMove()
+   {
+   }
+   /**
+   * Returns the move that plays on a certain square
+   * @param row the row of the square
+   * @param col the column of the square
+   * @return the move
+   */
+   public static byte of(int row, int col)
+   {
+      return (byte)(row * 8 + col);
+   }
+   /**
+   * Returns the row of the square a move plays on
+   * @param move the move, which must not be PASS
+   * @return the row of the move
+   */
+   public static int row(byte move)
+   {
+      return move >> 3;
+   }
+   /**
+   * Returns the column of the square a move plays on
+   * @param move the move, which must not be PASS
+   * @return the column of the move
+   */
+   public static int col(byte move)
+   {
+      return move & 7;
+   }
+   /**
+   * Returns the name of a move, a column letter followed by a row number 
+   * (such as "D3"), or "PASS"
+   * @param move the move
+   * @return the name of the move
+   */
+   public static String toString(byte move)
+   {
+      if(move == PASS)
+         return "PASS";
+      return "" + (char)('A' + col(move)) + (row(move) + 1);
+   }
+   /**
+   * Reads a move from its name, as given by toString; the column letter may 
+   * be either case
+   * @param s the name of the move
+   * @return the move
+   * @throws IllegalArgumentException if the name is not a move
+   */
+   public static byte parse(String s)
+   {
+      s = s.trim().toUpperCase();
+      if(s.equals("PASS"))
+         return PASS;
+      if(s.length() != 2 || s.charAt(0) < 'A' || s.charAt(0) > 'H' || 
+         s.charAt(1) < '1' || s.charAt(1) > '8')
+         throw new IllegalArgumentException("Not a move: " + s);
+      return of(s.charAt(1) - '1', s.charAt(0) - 'A');
+   }
+}
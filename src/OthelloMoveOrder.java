@@ -0,0 +1,216 @@
+/**
+ *  An OthelloMoveOrder decides the order an OthelloSearch tries the moves
+ *  of a position in. Alpha-beta pruning stops searching a position as soon
+ *  as one move is found to be good enough, so the sooner the best move is
+ *  tried, the fewer positions are searched. The moves are tried:
+ *
+ *  1. the best move found for the position before, kept in the table;
+ *  2. the killer moves of the ply: the last two moves that were good enough
+ *     to stop the search of another position at the same ply, which are
+ *     often just as good here;
+ *  3. the rest, best first by how often each square has stopped a search
+ *     before (the history heuristic), how good the square is in general
+ *     (corners are good and the squares next to them bad), and, far enough
+ *     from the leaves for it to be worth the time, how few moves the move
+ *     leaves the opponent (fastest-first).
+ *
+ *  The moves of each ply are kept in buffers made once, indexed by the
+ *  number of empty squares, which is different at every ply, so ordering
+ *  allocates nothing. Each search has its own OthelloMoveOrder.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloMoveOrder
+{
+   /**
+   * How good each square is to play on regardless of the position, from 0
+   * for the squares diagonally next to the corners to 9 for the corners
+   */
+   private static final int[] SQUARE_PRIORITY = {
+      9, 2, 7, 6, 6, 7, 2, 9,
+      2, 0, 3, 3, 3, 3, 0, 2,
+      7, 3, 5, 4, 4, 5, 3, 7,
+      6, 3, 4, 4, 4, 4, 3, 6,
+      6, 3, 4, 4, 4, 4, 3, 6,
+      7, 3, 5, 4, 4, 5, 3, 7,
+      2, 0, 3, 3, 3, 3, 0, 2,
+      9, 2, 7, 6, 6, 7, 2, 9};
+   /**
+   * The order key given to the move from the table, which is always first
+   */
+   private static final int HASH_KEY = 1 << 30;
+   /**
+   * The order key given to the first killer move; the second gets one less
+   */
+   private static final int KILLER_KEY = 1 << 29;
+   /**
+   * How much each point of square priority adds to a move's order key
+   */
+   private static final int PRIORITY_WEIGHT = 1 << 10;
+   /**
+   * How much each move left to the opponent takes from a move's order key
+   */
+   private static final int MOBILITY_WEIGHT = 1 << 12;
+   /**
+   * The history score above which every history score is halved, so old
+   * results fade and history never outweighs more than four points of
+   * square priority
+   */
+   private static final int HISTORY_LIMIT = PRIORITY_WEIGHT * 4;
+   /**
+   * The fewest plies left to search at which moves are ordered by the
+   * opponent's mobility, which takes a move generation for each move
+   */
+   private static final int MOBILITY_DEPTH = 3;
+   /**
+   * For each number of empty squares, the moves of the position being
+   * searched with that many
+   */
+   private final int[][] moveStack = new int[64][32];
+   /**
+   * For each number of empty squares, the order keys of the moves
+   */
+   private final int[][] keyStack = new int[64][32];
+   /**
+   * For each number of empty squares, the two latest moves that stopped
+   * the search of a position with that many
+   */
+   private final int[][] killers = new int[64][2];
+   /**
+   * For each square, how much searching has been saved by moves on it
+   * stopping the search of a position
+   */
+   private final int[] history = new int[64];
+   /**
+   * Whether or not moves are ordered, rather than tried in the order of
+   * their squares after the move from the table
+   */
+   private boolean enabled = true;
+
+   /**
+   * Constructs an OthelloMoveOrder with no killer moves or history
+   */
+   public OthelloMoveOrder()
+   {
+      clear();
+   }
+   /**
+   * Turns ordering on or off, so that the nodes it saves can be measured
+   * @param on whether or not to order moves
+   */
+   public void setEnabled(boolean on)
+   {
+      enabled = on;
+   }
+   /**
+   * Prepares for a new search: the killer moves are forgotten, since they
+   * belong to plies of the last search, and the history is halved
+   */
+   public void clear()
+   {
+      for(int[] k : killers)
+         k[0] = k[1] = -1;
+      for(int sq = 0; sq < 64; sq++)
+         history[sq] >>= 1;
+   }
+   /**
+   * Forgets everything learned from earlier searches: the killer moves and
+   * the whole history, so that the next search orders moves as a new
+   * OthelloMoveOrder would
+   */
+   public void reset()
+   {
+      clear();
+      for(int sq = 0; sq < 64; sq++)
+         history[sq] = 0;
+   }
+   /**
+   * Puts the legal moves of a position into the buffer for its number of
+   * empty squares, giving each an order key
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @param legal the legal moves
+   * @param hashMove the move from the table, or -1 for none
+   * @param empties the number of empty squares
+   * @param d the number of plies left to search
+   * @return the number of moves
+   */
+   public int order(long me, long opp, long legal, int hashMove, int empties,
+   int d)
+   {
+      int[] moves = moveStack[empties], keys = keyStack[empties];
+      int[] killer = killers[empties];
+      boolean mobility = enabled && d >= MOBILITY_DEPTH;
+      int n = 0;
+      for(; legal != 0; legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         int key;
+         if(sq == hashMove)
+            key = HASH_KEY;
+         else if(!enabled)
+            key = -sq;
+         else if(sq == killer[0])
+            key = KILLER_KEY;
+         else if(sq == killer[1])
+            key = KILLER_KEY - 1;
+         else
+         {
+            key = SQUARE_PRIORITY[sq] * PRIORITY_WEIGHT + history[sq];
+            if(mobility)
+            {
+               long flips = OthelloBitboard.flips(me, opp, sq);
+               key -= MOBILITY_WEIGHT * Long.bitCount(OthelloBitboard
+                  .legalMoves(opp & ~flips, me | flips | 1L << sq));
+            }
+         }
+         moves[n] = sq;
+         keys[n++] = key;
+      }
+      return n;
+   }
+   /**
+   * Finds the next move to try: the one with the highest key of those not
+   * tried yet, which is moved up to its turn. Picking one at a time rather
+   * than sorting saves the work when the search stops after a few moves.
+   * @param empties the number of empty squares of the position
+   * @param x how many moves have been tried
+   * @param n the number of moves
+   * @return the square of the move
+   */
+   public int next(int empties, int x, int n)
+   {
+      int[] moves = moveStack[empties], keys = keyStack[empties];
+      int best = x;
+      for(int y = x + 1; y < n; y++)
+         if(keys[y] > keys[best])
+            best = y;
+      int sq = moves[best], key = keys[best];
+      moves[best] = moves[x];
+      keys[best] = keys[x];
+      moves[x] = sq;
+      keys[x] = key;
+      return sq;
+   }
+   /**
+   * Records that a move stopped the search of a position, making it a
+   * killer move of its ply and raising its history score
+   * @param sq the square of the move
+   * @param empties the number of empty squares of the position
+   * @param d the number of plies that were left to search
+   */
+   public void cutoff(int sq, int empties, int d)
+   {
+      int[] killer = killers[empties];
+      if(killer[0] != sq)
+      {
+         killer[1] = killer[0];
+         killer[0] = sq;
+      }
+      history[sq] += d * d;
+      if(history[sq] > HISTORY_LIMIT)
+         for(int x = 0; x < 64; x++)
+            history[x] >>= 1;
+   }
+}
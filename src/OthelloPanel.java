@@ -5,7 +5,8 @@ import java.util.*;
 
 /**
 * OthelloPanel acts a holder for all other parts of the Othello game, such as 
-* the gameboard, scoreboard, and the resign, reset and quit buttons.
+* the gameboard, scoreboard, and the resign, reset, undo, redo, save, speed 
+* and quit buttons.
 * 
 * @author Max White / Nathan Harbison
 * @version 1.0
@@ -36,6 +37,18 @@ public class OthelloPanel extends JPanel
    */
    private JButton save;
    /**
+   * JButton used by the human player to take back their last move
+   */
+   private JButton undo;
+   /**
+   * JButton used by the human player to play again a move taken back
+   */
+   private JButton redo;
+   /**
+   * JButton used by the human player to change how fast moves are shown
+   */
+   private JButton speed;
+   /**
    * JButton used by the human player to exit the current game
    */
    private JButton exit;
@@ -48,22 +61,32 @@ public class OthelloPanel extends JPanel
    * players
    * @param black if the game is one player, whether or not the human player is 
    * playing as black
-   * @param s Scanner object containing the information of a loaded game; null if not
+   * @param saved the game to be loaded; null if not
    */
-   public OthelloPanel(boolean twoPlayers, boolean black, Scanner scan)
+   public OthelloPanel(boolean twoPlayers, boolean black, 
+   OthelloSavedGame saved)
    {
       setLayout(new BorderLayout());
       
-      JPanel subpanel = new JPanel();
+      JPanel subpanel = new JPanel(new GridLayout(2, 4));
       reset = new JButton("Reset");
       reset.addActionListener(new Resetter());
       subpanel.add(reset);
       resign = new JButton("Resign");
       resign.addActionListener(new Resigner());
       subpanel.add(resign);
+      undo = new JButton("Undo");
+      undo.addActionListener(new Undoer());
+      subpanel.add(undo);
+      redo = new JButton("Redo");
+      redo.addActionListener(new Redoer());
+      subpanel.add(redo);
       save = new JButton("Save Game");
       save.addActionListener(new Saver());
       subpanel.add(save);
+      speed = new JButton();
+      speed.addActionListener(new Speeder());
+      subpanel.add(speed);
       exit = new JButton("Exit");
       exit.addActionListener(new Exiter());
       subpanel.add(exit);
@@ -72,17 +95,21 @@ public class OthelloPanel extends JPanel
       scoreboard = new OthelloScoreboard(twoPlayers, black);
       add(scoreboard, BorderLayout.NORTH);
       
-      gameboard = new OthelloGameboard(this, scoreboard, twoPlayers, black, scan);
+      gameboard = new OthelloGameboard(this, scoreboard, twoPlayers, black, 
+         saved);
       add(gameboard, BorderLayout.CENTER);
+      speed.setText("Speed: " + gameboard.getSpeed());
      
    }
    /**
-   * Sets the resign + save buttons as enabled as according to the given boolean
+   * Sets the resign, undo, redo + save buttons as enabled as according to the given boolean
    * @param b whether or not the buttons are enabled
    */
    public void setButtons(boolean b)
    {
       resign.setEnabled(b);
+      undo.setEnabled(b);
+      redo.setEnabled(b);
       save.setEnabled(b);
    }
    /**
@@ -117,6 +144,35 @@ public class OthelloPanel extends JPanel
       }
    }
    /**
+   * An Undoer is used by the undo button to take back the last move
+   */
+   private class Undoer implements ActionListener
+   {
+      /**
+      * Takes back the last move
+      * @param e ActionEvent object the ActionListener interface needs
+      */
+      public void actionPerformed(ActionEvent e)
+      {
+         gameboard.undoMove();
+      }
+   }
+   /**
+   * A Redoer is used by the redo button to play again the last move taken 
+   * back
+   */
+   private class Redoer implements ActionListener
+   {
+      /**
+      * Plays again the last move taken back
+      * @param e ActionEvent object the ActionListener interface needs
+      */
+      public void actionPerformed(ActionEvent e)
+      {
+         gameboard.redoMove();
+      }
+   }
+   /**
    * A Saver is used by the save game button to save the game at any point
    */
    private class Saver implements ActionListener
@@ -131,6 +187,22 @@ public class OthelloPanel extends JPanel
       }
    }
    /**
+   * A Speeder is used by the speed button to step through how fast moves 
+   * are shown, from slow to instant
+   */
+   private class Speeder implements ActionListener
+   {
+      /**
+      * Changes to the next speed
+      * @param e ActionEvent object the ActionListener interface needs
+      */
+      public void actionPerformed(ActionEvent e)
+      {
+         gameboard.setSpeed(gameboard.getSpeed().next());
+         speed.setText("Speed: " + gameboard.getSpeed());
+      }
+   }
+   /**
    * An Exiter is used by the exit button to exit the game at any point
    */
    private class Exiter implements ActionListener
@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+/**
+ *  OthelloPerft counts the number of ways a game can go for a certain
+ *  number of moves, which checks that the move generator is exactly
+ *  correct: any mistake in finding legal moves or captured chips changes
+ *  the counts. A pass counts as a move when the player to move has no
+ *  legal moves, and a game that ends early counts as one finished line.
+ *  The lines after each of the first few moves are counted on separate
+ *  threads.
+ *
+ *  Run with a depth and optionally a position in the format of
+ *  OthelloPosition.toString (the starting position if none is given), or
+ *  with "-verify" and optionally the deepest depth to check the counts
+ *  from the starting position against the known ones. Adding "-divide"
+ *  also prints the count after each first move.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloPerft
+{
+   /**
+   * The known counts from the starting position for depths 1 to 12
+   */
+   private static final long[] REFERENCE = {4L, 12L, 56L, 244L, 1396L,
+      8200L, 55092L, 390216L, 3005288L, 24571284L, 212258800L, 1939886636L};
+   /**
+   * The deepest depth checked by "-verify" when none is given
+   */
+   private static final int VERIFY_DEPTH = 10;
+   /**
+   * The number of separate counts to split the work into for each thread,
+   * so that threads given quick counts can take on more
+   */
+   private static final int TASKS_PER_THREAD = 8;
+
+   /**
+   * Runs perft or checks the known counts
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: either "-verify" and optionally a depth, or a depth
+   * and optionally a position, along with "-divide" to print the count
+   * after each first move
+   */
+   public static void main(String[] args)
+   {
+      boolean verify = false, divide = false;
+      List<String> rest = new ArrayList<String>();
+      for(String a : args)
+      {
+         if(a.equals("-verify"))
+            verify = true;
+         else if(a.equals("-divide"))
+            divide = true;
+         else
+            rest.add(a);
+      }
+      if(verify)
+      {
+         int max = rest.isEmpty() ? VERIFY_DEPTH : Integer.parseInt(
+            rest.get(0));
+         boolean allCorrect = true;
+         for(int d = 1; d <= Math.min(max, REFERENCE.length); d++)
+            allCorrect &= run(OthelloPosition.START, d, divide,
+               REFERENCE[d - 1]);
+         System.out.println(allCorrect ? "All counts correct" :
+            "COUNTS DIFFER");
+         if(!allCorrect)
+            System.exit(1);
+         return;
+      }
+      if(rest.isEmpty())
+      {
+         System.out.println("Usage: java OthelloPerft depth [position] " +
+            "[-divide]\n       java OthelloPerft -verify [depth] [-divide]");
+         return;
+      }
+      int depth = Integer.parseInt(rest.get(0));
+      OthelloPosition p = OthelloPosition.START;
+      if(rest.size() > 1)
+         p = OthelloPosition.parse(String.join(" ", rest.subList(1,
+            rest.size())));
+      run(p, depth, divide, -1);
+   }
+   /**
+   * Counts the lines from a position and prints the count, the time taken
+   * and the speed
+   * @param p the position to count from
+   * @param depth the number of moves to count to
+   * @param divide whether or not to print the count after each first move
+   * @param expected the known count, or -1 if it is not known
+   * @return whether or not the count matches the known count
+   */
+   private static boolean run(OthelloPosition p, int depth, boolean divide,
+   long expected)
+   {
+      long start = System.nanoTime();
+      long count = perft(p.getMover(), p.getOpponent(), depth, divide);
+      double time = (System.nanoTime() - start) / 1e9;
+      boolean correct = expected < 0 || count == expected;
+      System.out.printf("depth %2d  %,16d  %8.3fs  %,14.0f nodes/s%s%n", depth,
+         count, time, count / Math.max(time, 1e-9), expected < 0 ? "" :
+         correct ? "  ok" : "  WRONG, expected " + expected);
+      return correct;
+   }
+   /**
+   * Counts the lines from a position, counting after each first move on
+   * a separate thread
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @param depth the number of moves to count to
+   * @param divide whether or not to print the count after each first move
+   * @return the number of lines
+   */
+   public static long perft(long me, long opp, int depth, boolean divide)
+   {
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(depth < 2 || (legal == 0 && OthelloBitboard.legalMoves(opp, me)
+         == 0))
+         return perft(me, opp, depth);
+      int threads = Runtime.getRuntime().availableProcessors();
+      List<long[]> roots = new ArrayList<long[]>();
+      if(legal == 0)
+         roots.add(new long[] {opp, me, OthelloMove.PASS});
+      for(; legal != 0; legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         roots.add(new long[] {opp & ~flips, me | flips | 1L << sq, sq});
+      }
+
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      long[] counts = new long[roots.size()];
+      List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+      boolean split = depth > 2 && roots.size() < threads * TASKS_PER_THREAD;
+      for(int x = 0; x < roots.size(); x++)
+      {
+         long[] root = roots.get(x);
+         int index = x;
+         if(!split)
+         {
+            tasks.add(pool.submit(() -> addCount(counts, index, perft(root[0],
+               root[1], depth - 1))));
+            continue;
+         }
+         long[][] children = children(root[0], root[1]);
+         if(children.length == 0)
+            counts[x] = 1;
+         for(long[] c : children)
+            tasks.add(pool.submit(() -> addCount(counts, index, perft(c[0],
+               c[1], depth - 2))));
+      }
+      for(ForkJoinTask<?> t : tasks)
+         t.join();
+      pool.shutdown();
+
+      long total = 0;
+      for(int x = 0; x < counts.length; x++)
+      {
+         if(divide)
+            System.out.printf("  %-4s %,16d%n", OthelloMove.toString((byte)
+               roots.get(x)[2]), counts[x]);
+         total += counts[x];
+      }
+      return total;
+   }
+   /**
+   * Adds to the count after one first move, from whichever thread
+   * finished counting part of it
+   * @param counts the count after each first move
+   * @param index the index of the first move
+   * @param n the number of lines to add
+   */
+   private static void addCount(long[] counts, int index, long n)
+   {
+      synchronized(counts)
+      {
+         counts[index] += n;
+      }
+   }
+   /**
+   * Finds the positions after each move of the player to move, or after
+   * passing if there are none
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the chips of the next player to move and of their opponent
+   * for each position, or no positions if the game is over
+   */
+   private static long[][] children(long me, long opp)
+   {
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(legal == 0)
+      {
+         if(OthelloBitboard.legalMoves(opp, me) == 0)
+            return new long[0][];
+         return new long[][] {{opp, me}};
+      }
+      long[][] children = new long[Long.bitCount(legal)][];
+      for(int x = 0; legal != 0; x++, legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         children[x] = new long[] {opp & ~flips, me | flips | 1L << sq};
+      }
+      return children;
+   }
+   /**
+   * Counts the lines from a position on the calling thread
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @param depth the number of moves to count to
+   * @return the number of lines
+   */
+   public static long perft(long me, long opp, int depth)
+   {
+      if(depth == 0)
+         return 1;
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(legal == 0)
+      {
+         if(OthelloBitboard.legalMoves(opp, me) == 0)
+            return 1;
+         return perft(opp, me, depth - 1);
+      }
+      if(depth == 1)
+         return Long.bitCount(legal);
+      long count = 0;
+      for(; legal != 0; legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         count += perft(opp & ~flips, me | flips | 1L << sq, depth - 1);
+      }
+      return count;
+   }
+}
@@ -0,0 +1,264 @@
+/**
+ *  An OthelloPosition is an unchangeable arrangement of chips on the board,
+ *  along with whose turn it is. The chips of each player are stored as a
+ *  bitboard (see OthelloBitboard), so a position takes two longs, and
+ *  playing a move gives a new position rather than changing this one.
+ *  Colors are given by the same index values used by the gameboard: 0 for
+ *  an empty square, 1 for black and 2 for white.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public final class OthelloPosition
+{
+   /**
+   * The position every game starts from, with black to move
+   */
+   public static final OthelloPosition START = new OthelloPosition(
+      0x0000000810000000L, 0x0000001008000000L, true);
+   /**
+   * The chips of the black player
+   */
+   private final long black;
+   /**
+   * The chips of the white player
+   */
+   private final long white;
+   /**
+   * Whether or not it is black's turn
+   */
+   private final boolean blackToMove;
+
+   /**
+   * Constructs an OthelloPosition from the chips of each player
+   * @param b the chips of the black player
+   * @param w the chips of the white player
+   * @param blackMoves whether or not it is black's turn
+   */
+   public OthelloPosition(long b, long w, boolean blackMoves)
+   {
+      if((b & w) != 0)
+         throw new IllegalArgumentException("A square cannot hold two chips");
+      black = b;
+      white = w;
+      blackToMove = blackMoves;
+   }
+   /**
+   * Creates an OthelloPosition from an int matrix of colors
+   * @param m an int matrix representing the gameboard, composed of the
+   * index values of the colors of the corresponding piece
+   * @param blackMoves whether or not it is black's turn
+   * @return the position
+   */
+   public static OthelloPosition fromMatrix(int[][] m, boolean blackMoves)
+   {
+      return new OthelloPosition(OthelloBitboard.fromMatrix(m, 1),
+         OthelloBitboard.fromMatrix(m, 2), blackMoves);
+   }
+   /**
+   * Returns the chips of the black player
+   * @return a bitboard of black's chips
+   */
+   public long getBlack()
+   {
+      return black;
+   }
+   /**
+   * Returns the chips of the white player
+   * @return a bitboard of white's chips
+   */
+   public long getWhite()
+   {
+      return white;
+   }
+   /**
+   * Returns whether or not it is black's turn
+   * @return true if black is to move, false if white is
+   */
+   public boolean isBlackToMove()
+   {
+      return blackToMove;
+   }
+   /**
+   * Returns the index value of the color of the player to move
+   * @return 1 if black is to move, 2 if white is
+   */
+   public int getColorToMove()
+   {
+      return blackToMove ? 1 : 2;
+   }
+   /**
+   * Returns the chips of the player to move
+   * @return a bitboard of the chips of the player to move
+   */
+   public long getMover()
+   {
+      return blackToMove ? black : white;
+   }
+   /**
+   * Returns the chips of the player not to move
+   * @return a bitboard of the chips of the opponent
+   */
+   public long getOpponent()
+   {
+      return blackToMove ? white : black;
+   }
+   /**
+   * Returns the index value of the color of the chip on a square
+   * @param row the row of the square
+   * @param col the column of the square
+   * @return 0 if the square is empty, 1 if it is black, 2 if it is white
+   */
+   public int getColor(int row, int col)
+   {
+      long bit = 1L << (row * 8 + col);
+      if((black & bit) != 0)
+         return 1;
+      if((white & bit) != 0)
+         return 2;
+      return 0;
+   }
+   /**
+   * Returns the number of chips a player has
+   * @param color the index value of the player's color
+   * @return the number of chips of that color
+   */
+   public int count(int color)
+   {
+      return Long.bitCount(color == 1 ? black : white);
+   }
+   /**
+   * Returns the number of empty squares
+   * @return the number of empty squares
+   */
+   public int getEmpties()
+   {
+      return 64 - Long.bitCount(black | white);
+   }
+   /**
+   * Finds all the squares the player to move can legally play on
+   * @return a bitboard with a bit set for every legal move
+   */
+   public long legalMoves()
+   {
+      return OthelloBitboard.legalMoves(getMover(), getOpponent());
+   }
+   /**
+   * Returns whether or not a move is legal for the player to move; passing
+   * is only legal when there are no other moves
+   * @param move the move
+   * @return whether or not the move can be played
+   */
+   public boolean isLegal(byte move)
+   {
+      if(move == OthelloMove.PASS)
+         return legalMoves() == 0;
+      return move >= 0 && move < 64 && (legalMoves() & 1L << move) != 0;
+   }
+   /**
+   * Finds the chips that would be captured by a move
+   * @param move the move, which must not be PASS
+   * @return a bitboard of the captured chips, or 0 if the move is not legal
+   */
+   public long flips(byte move)
+   {
+      return OthelloBitboard.flips(getMover(), getOpponent(), move);
+   }
+   /**
+   * Returns the position after the player to move plays a move
+   * @param move the move, which must be legal
+   * @return the position after the move, with the opponent to move
+   */
+   public OthelloPosition play(byte move)
+   {
+      if(move == OthelloMove.PASS)
+         return pass();
+      long flips = flips(move);
+      if(flips == 0)
+         throw new IllegalArgumentException("Illegal move: " +
+            OthelloMove.toString(move));
+      long changed = flips | 1L << move;
+      if(blackToMove)
+         return new OthelloPosition(black | changed, white & ~flips, false);
+      return new OthelloPosition(black & ~flips, white | changed, true);
+   }
+   /**
+   * Returns the position after the player to move passes
+   * @return the same chips with the opponent to move
+   */
+   public OthelloPosition pass()
+   {
+      return new OthelloPosition(black, white, !blackToMove);
+   }
+   /**
+   * Returns whether or not neither player has a legal move
+   * @return whether or not the game is over
+   */
+   public boolean isGameOver()
+   {
+      return legalMoves() == 0 &&
+         OthelloBitboard.legalMoves(getOpponent(), getMover()) == 0;
+   }
+   /**
+   * Returns whether or not another object is the same position
+   * @param o the object to compare to
+   * @return whether or not o is a position with the same chips and player
+   * to move
+   */
+   public boolean equals(Object o)
+   {
+      if(!(o instanceof OthelloPosition))
+         return false;
+      OthelloPosition p = (OthelloPosition)o;
+      return black == p.black && white == p.white &&
+         blackToMove == p.blackToMove;
+   }
+   /**
+   * Returns a hash code for the position
+   * @return the hash code
+   */
+   public int hashCode()
+   {
+      return Long.hashCode(OthelloZobrist.hash(getMover(), getOpponent()));
+   }
+   /**
+   * Returns the position as 64 characters, one per square in row order
+   * ('X' for black, 'O' for white, '-' for empty), followed by a space and
+   * the player to move
+   * @return the position as a String
+   */
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder(66);
+      for(int x = 0; x < 64; x++)
+         sb.append((black >>> x & 1) != 0 ? 'X' : (white >>> x & 1) != 0 ?
+            'O' : '-');
+      return sb.append(blackToMove ? " X" : " O").toString();
+   }
+   /**
+   * Reads a position written by toString
+   * @param s 64 characters, one per square in row order ('X' or '*' for
+   * black, 'O' for white, anything else for empty), then optionally
+   * whitespace and the player to move ('X' or 'O'); black moves if it is
+   * not given
+   * @return the position
+   * @throws IllegalArgumentException if there are fewer than 64 characters
+   */
+   public static OthelloPosition parse(String s)
+   {
+      s = s.trim();
+      if(s.length() < 64)
+         throw new IllegalArgumentException("A position needs 64 squares");
+      long b = 0, w = 0;
+      for(int x = 0; x < 64; x++)
+      {
+         char c = Character.toUpperCase(s.charAt(x));
+         if(c == 'X' || c == '*')
+            b |= 1L << x;
+         else if(c == 'O')
+            w |= 1L << x;
+      }
+      String side = s.substring(64).trim().toUpperCase();
+      return new OthelloPosition(b, w, !side.startsWith("O"));
+   }
+}
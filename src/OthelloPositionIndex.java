@@ -0,0 +1,532 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+/**
+ *  An OthelloPositionIndex answers questions about every position reached
+ *  in the games of an OthelloArchive: how many games reached a position,
+ *  how they ended for the player to move, and which games they were. It
+ *  is built once by replaying every game of the archive on bitboards, and
+ *  kept in the archive's file name with ".pos" added.
+ *
+ *  The index holds one entry for each position of each game, from the
+ *  starting position to the final one: the key of the position (the same
+ *  as in an OthelloBook, so positions that are the same up to a reflection
+ *  or rotation share a key) in 8 bytes, the number of the game in 4 bytes
+ *  and the game's final chip difference for the player to move in 4 bytes.
+ *  The entries are sorted by key, then by game, after a header holding the
+ *  magic number "OTHP", a version, the number of entries and the size of
+ *  the archive when the index was built. As in a book, the file is mapped
+ *  into memory and keys are found by interpolation search, so looking up a
+ *  position only takes as long as reading its entries.
+ *
+ *  Run with "build" and an archive to build its index, or with "query", an
+ *  archive and the moves of an opening (such as "f5 d6 c3") to show the
+ *  results of the games that reached the position after them, and of each
+ *  move from there.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloPositionIndex
+{
+   /**
+   * Marks the start of a position index: "OTHP" in ASCII
+   */
+   private static final int MAGIC = 0x4f544850;
+   /**
+   * The version of the format of position indexes
+   */
+   private static final int VERSION = 1;
+   /**
+   * The size of the header at the start of the file
+   */
+   private static final int HEADER_BYTES = 24;
+   /**
+   * The size of each entry
+   */
+   private static final int ENTRY_BYTES = 16;
+   /**
+   * The number of interpolation steps tried before falling back to binary
+   * search, in case the keys are not spread evenly
+   */
+   private static final int INTERPOLATION_STEPS = 8;
+   /**
+   * The average number of entries in each bucket of the radix sort used to
+   * build the index
+   */
+   private static final int BUCKET_ENTRIES = 8;
+   /**
+   * The most entries an index can be built with, as they are sorted in
+   * arrays
+   */
+   private static final int MAX_ENTRIES = Integer.MAX_VALUE - 8;
+   /**
+   * The entries, mapped into memory
+   */
+   private OthelloMappedEntries entries;
+   /**
+   * The number of entries
+   */
+   private long size;
+
+   /**
+   * Opens the position index of an archive, mapping it into memory
+   * @param archive the file of the archive
+   * @throws IOException if the index cannot be read, is missing, or was
+   * built for a smaller archive
+   */
+   public OthelloPositionIndex(Path archive) throws IOException
+   {
+      Path path = indexPath(archive);
+      if(!Files.exists(path))
+         throw new IOException(archive + " has no position index; build it " +
+            "first");
+      try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+      {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+         while(header.hasRemaining() && channel.read(header) >= 0);
+         header.flip();
+         if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ||
+            header.getInt() != VERSION)
+            throw new IOException(path + " is not a position index");
+         size = header.getLong();
+         if(header.getLong() != Files.size(archive))
+            throw new IOException(path + " is out of date; build it again");
+         if(channel.size() != HEADER_BYTES + size * ENTRY_BYTES)
+            throw new IOException(path + " is the wrong size");
+         entries = new OthelloMappedEntries(channel, HEADER_BYTES, size,
+            ENTRY_BYTES);
+      }
+   }
+   /**
+   * Returns the number of entries in the index, one for each position of
+   * each game
+   * @return the number of entries
+   */
+   public long size()
+   {
+      return size;
+   }
+   /**
+   * Finds the results of every game that reached a position
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the results, for the player to move
+   */
+   public Stats getStats(long me, long opp)
+   {
+      long key = OthelloBook.key(me, opp);
+      int games = 0, wins = 0, draws = 0, total = 0;
+      for(long i = find(key); i >= 0 && i < size && getKey(i) == key; i++)
+      {
+         int r = getResult(i);
+         games++;
+         total += r;
+         if(r > 0)
+            wins++;
+         else if(r == 0)
+            draws++;
+      }
+      return new Stats(games, wins, draws, total);
+   }
+   /**
+   * Finds the results of the games after each legal move of a position
+   * @param p the position
+   * @return the results for the player to move in p, indexed by the square
+   * of the move; null for squares that are not legal moves or that no game
+   * played
+   */
+   public Stats[] getMoveStats(OthelloPosition p)
+   {
+      Stats[] stats = new Stats[64];
+      long me = p.getMover(), opp = p.getOpponent();
+      for(long legal = p.legalMoves(); legal != 0; legal &= legal - 1)
+      {
+         int sq = Long.numberOfTrailingZeros(legal);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         //the entries hold the results for the opponent, who moves next
+         Stats s = getStats(opp & ~flips, me | flips | 1L << sq);
+         if(s.getGames() > 0)
+            stats[sq] = s.reverse();
+      }
+      return stats;
+   }
+   /**
+   * Finds the games that reached a position
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @param max the most games to find
+   * @return the numbers of the games in the archive, in order
+   */
+   public int[] getGames(long me, long opp, int max)
+   {
+      long key = OthelloBook.key(me, opp);
+      int[] games = new int[16];
+      int n = 0;
+      for(long i = find(key); i >= 0 && i < size && n < max &&
+         getKey(i) == key; i++)
+      {
+         if(n == games.length)
+            games = Arrays.copyOf(games, n * 2);
+         games[n++] = getGame(i);
+      }
+      return Arrays.copyOf(games, n);
+   }
+   /**
+   * Finds the first entry with a key
+   * @param key the key
+   * @return the index of the first entry, or -1 if there are none
+   */
+   private long find(long key)
+   {
+      long lo = 0, hi = size - 1;
+      for(int step = 0; lo <= hi; step++)
+      {
+         long low = getKey(lo), high = getKey(hi);
+         if(key < low || key > high)
+            return -1;
+         if(low == key)
+            return lo;
+         long mid;
+         if(step >= INTERPOLATION_STEPS || high == low)
+            mid = (lo + hi) >>> 1;
+         else
+            mid = lo + (long)((double)(key - low) / (high - low) * (hi - lo));
+         long k = getKey(mid);
+         if(k < key)
+            lo = mid + 1;
+         else if(k > key)
+            hi = mid - 1;
+         else
+         {
+            //lo holds a smaller key, so the first entry with the key is
+            //after lo and no later than mid
+            while(lo + 1 < mid)
+            {
+               long m = (lo + mid) >>> 1;
+               if(getKey(m) < key)
+                  lo = m;
+               else
+                  mid = m;
+            }
+            return mid;
+         }
+      }
+      return -1;
+   }
+   /**
+   * Returns the key of an entry
+   * @param i the index of the entry
+   * @return the key
+   */
+   private long getKey(long i)
+   {
+      return entries.getLong(i, 0);
+   }
+   /**
+   * Returns the number of the game of an entry
+   * @param i the index of the entry
+   * @return the number of the game in the archive
+   */
+   private int getGame(long i)
+   {
+      return entries.getInt(i, 8);
+   }
+   /**
+   * Returns the result of the game of an entry
+   * @param i the index of the entry
+   * @return the final chip difference for the player to move
+   */
+   private int getResult(long i)
+   {
+      return entries.getInt(i, 12);
+   }
+   /**
+   * Returns the file the position index of an archive is kept in
+   * @param archive the file of the archive
+   * @return the file of the index
+   */
+   public static Path indexPath(Path archive)
+   {
+      return archive.resolveSibling(archive.getFileName() + ".pos");
+   }
+   /**
+   * Builds the position index of an archive, replacing any it had
+   * @param archive the file of the archive
+   * @return the number of entries in the index
+   * @throws IOException if the archive cannot be read or the index cannot
+   * be written
+   */
+   public static long build(Path archive) throws IOException
+   {
+      long[] keys = new long[1 << 16];
+      int[] games = new int[keys.length];
+      int[] results = new int[keys.length];
+      int count = 0;
+      long archiveSize;
+      try(OthelloArchive.Reader in = new OthelloArchive.Reader(archive))
+      {
+         while(in.next())
+         {
+            if(count + in.getMoveCount() + 1 > keys.length)
+            {
+               if(keys.length == MAX_ENTRIES)
+                  throw new IOException(archive + " has too many positions");
+               int n = (int)Math.min(2L * keys.length, MAX_ENTRIES);
+               keys = Arrays.copyOf(keys, n);
+               games = Arrays.copyOf(games, n);
+               results = Arrays.copyOf(results, n);
+            }
+            //the moves are played straight on bitboards, without checking
+            //them; the archive is trusted, as its games were checked when
+            //they were added
+            long me = OthelloPosition.START.getMover();
+            long opp = OthelloPosition.START.getOpponent();
+            int result = in.getResult();
+            for(int x = 0; ; x++)
+            {
+               keys[count] = OthelloBook.key(me, opp);
+               games[count] = (int)in.getId();
+               results[count++] = result;
+               if(x == in.getMoveCount())
+                  break;
+               byte m = in.getMove(x);
+               if(m != OthelloMove.PASS)
+               {
+                  long flips = OthelloBitboard.flips(me, opp, m);
+                  me |= flips | 1L << m;
+                  opp &= ~flips;
+               }
+               long t = me;
+               me = opp;
+               opp = t;
+               result = -result;
+            }
+         }
+         archiveSize = in.size();
+      }
+      sort(keys, games, results, count);
+
+      ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+      try(FileChannel channel = FileChannel.open(indexPath(archive),
+         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         buffer.putInt(MAGIC).putInt(VERSION).putLong(count)
+            .putLong(archiveSize);
+         for(int x = 0; x < count; x++)
+         {
+            if(buffer.remaining() < ENTRY_BYTES)
+               OthelloArchive.write(channel, buffer);
+            buffer.putLong(keys[x]).putInt(games[x]).putInt(results[x]);
+         }
+         OthelloArchive.write(channel, buffer);
+      }
+      return count;
+   }
+   /**
+   * Sorts entries by key, keeping entries with the same key in the order
+   * they were given. The keys are hashes, so they are spread evenly, and
+   * are first put into buckets by their highest bits, each of which holds
+   * only a few entries that are then sorted by insertion.
+   * @param keys the keys, which are never negative
+   * @param games the numbers of the games, sorted along with the keys
+   * @param results the results, sorted along with the keys
+   * @param count the number of entries
+   */
+   private static void sort(long[] keys, int[] games, int[] results,
+   int count)
+   {
+      long max = 1;
+      for(int x = 0; x < count; x++)
+         max = Math.max(max, keys[x]);
+      int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(count /
+         BUCKET_ENTRIES));
+      int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(max) - bits);
+      int[] starts = new int[(1 << bits) + 1];
+      for(int x = 0; x < count; x++)
+         starts[(int)(keys[x] >>> shift) + 1]++;
+      for(int b = 0; b < 1 << bits; b++)
+         starts[b + 1] += starts[b];
+      long[] k = new long[count];
+      int[] g = new int[count], r = new int[count];
+      for(int x = 0; x < count; x++)
+      {
+         int i = starts[(int)(keys[x] >>> shift)]++;
+         k[i] = keys[x];
+         g[i] = games[x];
+         r[i] = results[x];
+      }
+      //every bucket now ends where the next one started, so the first
+      //bucket starts at 0
+      for(int b = 0, start = 0; b < 1 << bits; start = starts[b++])
+         for(int x = start + 1; x < starts[b]; x++)
+         {
+            long key = k[x];
+            int game = g[x], result = r[x], y = x - 1;
+            for(; y >= start && k[y] > key; y--)
+            {
+               k[y + 1] = k[y];
+               g[y + 1] = g[y];
+               r[y + 1] = r[y];
+            }
+            k[y + 1] = key;
+            g[y + 1] = game;
+            r[y + 1] = result;
+         }
+      System.arraycopy(k, 0, keys, 0, count);
+      System.arraycopy(g, 0, games, 0, count);
+      System.arraycopy(r, 0, results, 0, count);
+   }
+   /**
+   * Builds or queries the position index of an archive
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings, as described above
+   * @throws IOException if a file cannot be read or written
+   */
+   public static void main(String[] args) throws IOException
+   {
+      if(args.length == 2 && args[0].equals("build"))
+      {
+         long start = System.nanoTime();
+         long n = build(Paths.get(args[1]));
+         System.out.printf("%,d positions written in %.1fs%n", n,
+            (System.nanoTime() - start) / 1e9);
+      }
+      else if(args.length >= 2 && args[0].equals("query"))
+      {
+         OthelloPositionIndex index = new OthelloPositionIndex(Paths.get(
+            args[1]));
+         OthelloPosition p = OthelloPosition.START;
+         for(int x = 2; x < args.length; x++)
+         {
+            if(p.legalMoves() == 0)
+               p = p.play(OthelloMove.PASS);
+            p = p.play(OthelloMove.parse(args[x]));
+         }
+         long start = System.nanoTime();
+         Stats here = index.getStats(p.getMover(), p.getOpponent());
+         Stats[] moves = index.getMoveStats(p);
+         double ms = (System.nanoTime() - start) / 1e6;
+         System.out.println(p);
+         System.out.println("  here " + here);
+         for(int sq = 0; sq < 64; sq++)
+            if(moves[sq] != null)
+               System.out.printf("  %-4s %s%n", OthelloMove.toString(
+                  (byte)sq), moves[sq]);
+         System.out.printf("found in %.2f ms%n", ms);
+      }
+      else
+         System.out.println("Usage: java OthelloPositionIndex build archive" +
+            "\n       java OthelloPositionIndex query archive [moves...]");
+   }
+   /**
+   * A Stats holds the results of the games that reached a position, for
+   * one of the players
+   */
+   public static class Stats
+   {
+      /**
+      * The number of games
+      */
+      private final int games;
+      /**
+      * The number of games the player won
+      */
+      private final int wins;
+      /**
+      * The number of games that were drawn
+      */
+      private final int draws;
+      /**
+      * The sum of the final chip differences for the player
+      */
+      private final int total;
+
+      /**
+      * Constructs a Stats
+      * @param g the number of games
+      * @param w the number of games the player won
+      * @param d the number of games that were drawn
+      * @param t the sum of the final chip differences for the player
+      */
+      public Stats(int g, int w, int d, int t)
+      {
+         games = g;
+         wins = w;
+         draws = d;
+         total = t;
+      }
+      /**
+      * Returns the same results for the other player
+      * @return the results for the other player
+      */
+      public Stats reverse()
+      {
+         return new Stats(games, games - wins - draws, draws, -total);
+      }
+      /**
+      * Returns the number of games
+      * @return the number of games
+      */
+      public int getGames()
+      {
+         return games;
+      }
+      /**
+      * Returns the number of games the player won
+      * @return the number of wins
+      */
+      public int getWins()
+      {
+         return wins;
+      }
+      /**
+      * Returns the number of games that were drawn
+      * @return the number of draws
+      */
+      public int getDraws()
+      {
+         return draws;
+      }
+      /**
+      * Returns the number of games the player lost
+      * @return the number of losses
+      */
+      public int getLosses()
+      {
+         return games - wins - draws;
+      }
+      /**
+      * Returns the share of the games the player won, counting draws as
+      * half a win
+      * @return the share of wins from 0 to 1, or 0 if there were no games
+      */
+      public double getWinRate()
+      {
+         return games == 0 ? 0 : (wins + draws / 2.0) / games;
+      }
+      /**
+      * Returns the average final chip difference for the player
+      * @return the average difference, or 0 if there were no games
+      */
+      public double getAverageScore()
+      {
+         return games == 0 ? 0 : (double)total / games;
+      }
+      /**
+      * Returns the results in words, such as "120 games, 55% won, +3.2"
+      * @return the results as a String
+      */
+      public String toString()
+      {
+         return String.format("%,d games, %.0f%% won, %+.1f", games,
+            getWinRate() * 100, getAverageScore());
+      }
+   }
+}
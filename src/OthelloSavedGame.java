@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+/**
+ *  An OthelloSavedGame is a game saved from the gameboard to be carried on
+ *  later: the game itself, with every move played so far, along with who
+ *  was playing and the win-loss record shown on the scoreboard.
+ *
+ *  Games are saved in a small binary file, read and written in one go
+ *  through a FileChannel. The file starts with the magic number "OTHS" and
+ *  a version, followed by a byte of flags (whether the human player is
+ *  black, whether two humans are playing, and whether black moved first),
+ *  the wins of each player, the ties and the games played (4 bytes each),
+ *  the chips of black and of white the game started from (8 bytes each),
+ *  the number of moves (2 bytes), and the moves (one byte each, row * 8 +
+ *  col, or -1 for a pass). The current position is found by playing the
+ *  moves again, so a saved game takes about 100 bytes and loads at once.
+ *
+ *  Games saved before there was a binary format, as text files listing
+ *  the color of each square, can still be read, though they have no moves.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloSavedGame
+{
+   /**
+   * The extension of saved games
+   */
+   public static final String EXTENSION = ".othello";
+   /**
+   * The extension of saved games in the old text format
+   */
+   public static final String LEGACY_EXTENSION = ".txt";
+   /**
+   * Marks the start of a saved game: "OTHS" in ASCII
+   */
+   private static final int MAGIC = 0x4f544853;
+   /**
+   * The version of the format of saved games
+   */
+   private static final int VERSION = 1;
+   /**
+   * The size of everything in the file before the moves
+   */
+   private static final int HEADER_BYTES = 43;
+   /**
+   * Set in the flags if the human player is black
+   */
+   private static final int BLACK = 1;
+   /**
+   * Set in the flags if two humans are playing
+   */
+   private static final int TWO_PLAYERS = 2;
+   /**
+   * Set in the flags if black moved first
+   */
+   private static final int BLACK_STARTED = 4;
+   /**
+   * The game, with every move played so far
+   */
+   private OthelloGame game;
+   /**
+   * Whether or not the human player is black, if there is only one
+   */
+   private boolean black;
+   /**
+   * Whether or not the game is played by two human players
+   */
+   private boolean twoPlayers;
+   /**
+   * The wins of player one, the wins of player two, the ties and the games
+   * played, as shown on the scoreboard
+   */
+   private int[] stats;
+
+   /**
+   * Constructs an OthelloSavedGame
+   * @param g the game, with every move played so far
+   * @param b whether or not the human player is black
+   * @param two whether or not the game is played by two human players
+   * @param st the wins of player one, the wins of player two, the ties and
+   * the games played
+   */
+   public OthelloSavedGame(OthelloGame g, boolean b, boolean two, int[] st)
+   {
+      if(st.length != 4)
+         throw new IllegalArgumentException("Stats must hold four numbers");
+      game = g;
+      black = b;
+      twoPlayers = two;
+      stats = st.clone();
+   }
+   /**
+   * Returns the game
+   * @return the game, with every move played so far
+   */
+   public OthelloGame getGame()
+   {
+      return game;
+   }
+   /**
+   * Returns whether or not the human player is black
+   * @return whether or not the human player is black
+   */
+   public boolean isBlack()
+   {
+      return black;
+   }
+   /**
+   * Returns whether or not the game is played by two human players
+   * @return whether or not two humans are playing
+   */
+   public boolean isTwoPlayers()
+   {
+      return twoPlayers;
+   }
+   /**
+   * Returns the win-loss record shown on the scoreboard
+   * @return the wins of player one, the wins of player two, the ties and
+   * the games played
+   */
+   public int[] getStats()
+   {
+      return stats.clone();
+   }
+   /**
+   * Saves the game to a file
+   * @param file the file, which is replaced if it exists
+   * @throws IOException if the file cannot be written
+   */
+   public void write(Path file) throws IOException
+   {
+      OthelloPosition start = game.getStart();
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES +
+         game.getMoveCount());
+      buffer.putInt(MAGIC).putInt(VERSION);
+      buffer.put((byte)((black ? BLACK : 0) | (twoPlayers ? TWO_PLAYERS : 0) |
+         (start.isBlackToMove() ? BLACK_STARTED : 0)));
+      for(int s : stats)
+         buffer.putInt(s);
+      buffer.putLong(start.getBlack()).putLong(start.getWhite());
+      buffer.putShort((short)game.getMoveCount());
+      for(int x = 0; x < game.getMoveCount(); x++)
+         buffer.put(game.getMove(x));
+      buffer.flip();
+      try(FileChannel channel = FileChannel.open(file,
+         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         while(buffer.hasRemaining())
+            channel.write(buffer);
+      }
+   }
+   /**
+   * Loads a saved game, playing its moves again to check them
+   * @param file the file
+   * @return the saved game
+   * @throws IOException if the file cannot be read or is not a saved game
+   */
+   public static OthelloSavedGame read(Path file) throws IOException
+   {
+      ByteBuffer buffer;
+      try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+      {
+         if(channel.size() < HEADER_BYTES || channel.size() > HEADER_BYTES +
+            0xffff)
+            throw new IOException(file + " is not a saved game");
+         buffer = ByteBuffer.allocate((int)channel.size());
+         while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+      }
+      buffer.flip();
+      if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+         throw new IOException(file + " is not a saved game");
+      int flags = buffer.get();
+      int[] stats = new int[4];
+      for(int x = 0; x < stats.length; x++)
+         stats[x] = buffer.getInt();
+      long b = buffer.getLong(), w = buffer.getLong();
+      int count = buffer.getShort() & 0xffff;
+      if(buffer.remaining() != count)
+         throw new IOException(file + " is the wrong size");
+      OthelloGame game;
+      try {
+         game = new OthelloGame(new OthelloPosition(b, w,
+            (flags & BLACK_STARTED) != 0));
+         for(int x = 0; x < count; x++)
+            game.play(buffer.get());
+      } catch(IllegalArgumentException | IllegalStateException e) {
+         throw new IOException("Bad saved game: " + e.getMessage());
+      }
+      return new OthelloSavedGame(game, (flags & BLACK) != 0,
+         (flags & TWO_PLAYERS) != 0, stats);
+   }
+   /**
+   * Loads a game saved in the old text format, which lists whether the
+   * human player is black, whether two humans are playing, the scoreboard,
+   * the last player to move and then the color of each square, one to a
+   * line. The game starts from the saved position, as no moves were kept.
+   * @param file the file
+   * @return the saved game
+   * @throws IOException if the file cannot be read or is not a saved game
+   */
+   public static OthelloSavedGame readLegacy(Path file) throws IOException
+   {
+      try(Scanner scan = new Scanner(file))
+      {
+         boolean black = scan.nextBoolean();
+         boolean twoPlayers = scan.nextBoolean();
+         String[] score = scan.next().split(":");
+         int[] stats = new int[4];
+         for(int x = 0; x < stats.length; x++)
+            stats[x] = Integer.parseInt(score[x]);
+         boolean blackMoves = scan.nextInt() == 2;
+         int[][] m = new int[8][8];
+         for(int x = 0; x < m.length; x++)
+            for(int y = 0; y < m[0].length; y++)
+               m[x][y] = scan.nextInt();
+         return new OthelloSavedGame(new OthelloGame(
+            OthelloPosition.fromMatrix(m, blackMoves)), black, twoPlayers,
+            stats);
+      } catch(RuntimeException e) {
+         throw new IOException(file + " is not a saved game");
+      }
+   }
+   /**
+   * Loads a game by the name it was saved under, from the binary format if
+   * it was saved in it and otherwise from the old text format
+   * @param name the name of the game
+   * @return the saved game, or null if there is no game by that name
+   * @throws IOException if the game cannot be read
+   */
+   public static OthelloSavedGame load(String name) throws IOException
+   {
+      Path file = Paths.get(name + EXTENSION);
+      if(Files.exists(file))
+         return read(file);
+      file = Paths.get(name + LEGACY_EXTENSION);
+      if(Files.exists(file))
+         return readLegacy(file);
+      return null;
+   }
+}
@@ -50,6 +50,10 @@ public class OthelloScoreboard extends JPanel
    */
    private JLabel p2Chips;
    /**
+   * JLabel that shows what the AI is thinking about while it is its turn
+   */
+   private JLabel status;
+   /**
    * JLabel that shows how many games have already occurred
    */
    private JLabel games;
@@ -87,7 +91,8 @@ public class OthelloScoreboard extends JPanel
       p1 = new JLabel("Player One", SwingConstants.CENTER);
       p1.setOpaque(true);
       add(p1);
-      add(new JLabel());
+      status = new JLabel("", SwingConstants.CENTER);
+      add(status);
       p2 = new JLabel("Player Two", SwingConstants.CENTER);
       p2.setOpaque(true);
       add(p2);
@@ -137,6 +142,15 @@ public class OthelloScoreboard extends JPanel
       repaint();
    }
    /**
+   * Shows a short message about the game, such as how far ahead the AI has 
+   * looked
+   * @param text the message to show, or an empty String to clear it
+   */
+   public void setStatus(String text)
+   {
+      status.setText(text);
+   }
+   /**
    * Updates the scoreboard to show the win-loss record, games played and percentages, based  
    * on the number given and shows the player a message displaying who won
    * @param winner the outcome of the match (1 means player one won, 2 means player two 
@@ -219,13 +233,31 @@ public class OthelloScoreboard extends JPanel
    public void setScore(String s)
    {
       String[] sArr = s.split(":");
-      pOneWins = Integer.parseInt(sArr[0]);
-      pTwoWins = Integer.parseInt(sArr[1]);
-      tie = Integer.parseInt(sArr[2]);
-      gamesPlayed = Integer.parseInt(sArr[3]);
+      setStats(new int[] {Integer.parseInt(sArr[0]), Integer.parseInt(sArr[1]),
+         Integer.parseInt(sArr[2]), Integer.parseInt(sArr[3])});
       p1Chips.setText("Chips: "+sArr[4]);
       p2Chips.setText("Chips: "+sArr[5]);      
-      
+   }
+   /**
+   * Returns the win-loss record of the games played so far
+   * @return the wins of player one, the wins of player two, the ties and 
+   * the games played, in that order
+   */
+   public int[] getStats()
+   {
+      return new int[] {pOneWins, pTwoWins, tie, gamesPlayed};
+   }
+   /**
+   * Sets the win-loss record of the games played so far
+   * @param stats the wins of player one, the wins of player two, the ties 
+   * and the games played, in that order
+   */
+   public void setStats(int[] stats)
+   {
+      pOneWins = stats[0];
+      pTwoWins = stats[1];
+      tie = stats[2];
+      gamesPlayed = stats[3];
       ties.setText("Ties: "+tie);  
       String p1 = format((double)pOneWins / gamesPlayed);
       String p2 = format((double)pTwoWins / gamesPlayed);
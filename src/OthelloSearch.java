@@ -0,0 +1,699 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+/**
+ *  OthelloSearch finds the best move for a position by searching the game
+ *  tree with negamax and alpha-beta pruning. The search is iteratively
+ *  deepened, one ply at a time, until either the time or node budget runs
+ *  out or the end of the game is reached, and the move found by the deepest
+ *  finished search is played. A bigger budget therefore lets the AI look
+ *  further ahead. Results are kept in an OthelloTranspositionTable, so
+ *  positions reached more than once are only searched once, and the best
+ *  move found for a position earlier is tried first, followed by the rest
+ *  in the order chosen by an OthelloMoveOrder. The search can also run on
+ *  several threads at once, which share the same table.
+ *
+ *  After each search, the effective branching factor (how many times more
+ *  nodes each iteration took than the one before) and how often the first
+ *  move tried was good enough to stop the search of a position can be
+ *  read, to measure how well the moves were ordered.
+ *
+ *  A search can also ponder: search the position the opponent is expected
+ *  to leave, with no budget, while they think. If they play the expected
+ *  move, the search takes on its usual budget, counted from when pondering
+ *  started, so it answers at once if it has already used it; if not, it is
+ *  cancelled, and the results it left in the table still help.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloSearch
+{
+   /**
+   * The score given for each chip of difference at the end of the game,
+   * greater than any score returned by the evaluation
+   */
+   public static final int WIN = 1000;
+   /**
+   * A score greater than any score the search can return
+   */
+   private static final int INFINITY = 100000;
+   /**
+   * The number of nodes searched between checks of the time budget
+   */
+   private static final int CHECK_INTERVAL = 1024;
+   /**
+   * The table of positions already searched
+   */
+   private OthelloTranspositionTable table;
+   /**
+   * Solves positions near the end of the game exactly
+   */
+   private OthelloEndgame endgame;
+   /**
+   * Estimates the score of positions where the search stops
+   */
+   private OthelloEvaluation evaluation = new OthelloEvaluation();
+   /**
+   * Chooses the order moves are tried in
+   */
+   private final OthelloMoveOrder order = new OthelloMoveOrder();
+   /**
+   * The number of empty squares at or below which positions are solved 
+   * exactly instead of searched
+   */
+   private int endgameEmpties = 18;
+   /**
+   * The most time a single search can take in milliseconds, or 0 if there
+   * is no limit
+   */
+   private long timeLimit;
+   /**
+   * The most nodes a single search can visit, or 0 if there is no limit
+   */
+   private long nodeLimit;
+   /**
+   * The time at which the current search must stop
+   */
+   private volatile long deadline;
+   /**
+   * When the current search started, from System.currentTimeMillis
+   */
+   private volatile long started;
+   /**
+   * Whether or not the current search is pondering, and so has no budget 
+   * until the opponent plays the move it expects
+   */
+   private volatile boolean pondering;
+   /**
+   * The number of nodes visited by the current search
+   */
+   private long nodes;
+   /**
+   * Whether or not the current search has run out of budget; set by other 
+   * threads for helper searches
+   */
+   private volatile boolean stopped;
+   /**
+   * The asynchronous request the current search is answering, which stops 
+   * the search once it is cancelled; null if the search was not requested 
+   * asynchronously
+   */
+   private volatile CompletableFuture<Byte> request;
+   /**
+   * Told about the progress of each search, or null
+   */
+   private volatile OthelloSearchListener listener;
+   /**
+   * The number of threads used by each search, including the calling one
+   */
+   private int threads = 1;
+   /**
+   * The threads the helper searches run on; created when first needed
+   */
+   private ForkJoinPool pool;
+   /**
+   * The searches run by the helper threads, sharing this search's table
+   */
+   private OthelloSearch[] helpers;
+   /**
+   * The helper searches currently running, or null if there are none
+   */
+   private ForkJoinTask<?>[] tasks;
+   /**
+   * The deepest a search goes, or 0 for no limit
+   */
+   private int maxDepth;
+   /**
+   * The number of nodes visited by the finished iterations of the current 
+   * search, indexed by their depth
+   */
+   private final long[] iterationNodes = new long[65];
+   /**
+   * The number of times a move was good enough to stop the search of a 
+   * position during the current search
+   */
+   private long cutoffs;
+   /**
+   * The number of times the first move tried was good enough to stop the 
+   * search of a position during the current search
+   */
+   private long firstMoveCutoffs;
+   /**
+   * The legal moves of the root position, best first
+   */
+   private final int[] rootMoves = new int[32];
+   /**
+   * The number of legal moves of the root position
+   */
+   private int rootCount;
+   /**
+   * The depth of the deepest finished iteration of the current search
+   */
+   private int depth;
+   /**
+   * The score of the best move found by the deepest finished iteration
+   */
+   private int score;
+
+   /**
+   * Constructs an OthelloSearch with a certain budget per search; if both
+   * limits are 0, the search continues until the end of the game
+   * @param t the table of positions already searched, which may be shared 
+   * between searches
+   * @param time the most time a search can take in milliseconds, or 0 for
+   * no limit
+   * @param maxNodes the most nodes a search can visit, or 0 for no limit
+   */
+   public OthelloSearch(OthelloTranspositionTable t, long time, long maxNodes)
+   {
+      table = t;
+      endgame = new OthelloEndgame(t, this);
+      timeLimit = time;
+      nodeLimit = maxNodes;
+   }
+   /**
+   * Sets the number of threads used by each search. Every extra thread runs 
+   * its own search of the same position, sharing results through the table, 
+   * so that the calling thread reaches each depth sooner.
+   * @param n the number of threads, including the calling one
+   */
+   public void setThreads(int n)
+   {
+      threads = Math.max(1, n);
+      if(pool != null)
+         pool.shutdown();
+      pool = null;
+      helpers = null;
+   }
+   /**
+   * Sets the number of empty squares at or below which the endgame solver 
+   * is used, finding the exact final chip difference instead of an estimate
+   * @param n the number of empty squares, or 0 to never use the solver
+   */
+   public void setEndgameEmpties(int n)
+   {
+      endgameEmpties = n;
+   }
+   /**
+   * Sets the deepest a search goes, so that searches of the same position 
+   * always do the same work, such as when measuring move ordering
+   * @param d the most plies to search, or 0 for no limit
+   */
+   public void setMaxDepth(int d)
+   {
+      maxDepth = d;
+   }
+   /**
+   * Turns move ordering beyond the move from the table on or off, so that 
+   * the nodes it saves can be measured
+   * @param on whether or not to order moves
+   */
+   public void setMoveOrdering(boolean on)
+   {
+      order.setEnabled(on);
+   }
+   /**
+   * Forgets the move ordering learned from earlier searches, by this search 
+   * and its helper threads, so that a search played from the start of a 
+   * new game does the same work as a new search would; the table is left 
+   * as it is, since it may be shared
+   */
+   public void resetMoveOrdering()
+   {
+      order.reset();
+      if(helpers != null)
+         for(OthelloSearch helper : helpers)
+            helper.order.reset();
+   }
+   /**
+   * Sets the weights used to estimate the score of positions where the
+   * search stops, by this search and its helper threads
+   * @param w the weights of every stage, as given to OthelloEvaluation
+   */
+   public void setWeights(int[] w)
+   {
+      evaluation = new OthelloEvaluation(w);
+      if(helpers != null)
+         for(OthelloSearch helper : helpers)
+            helper.setWeights(w);
+   }
+   /**
+   * Sets the listener told about the progress of each search
+   * @param l the listener, or null for none
+   */
+   public void setListener(OthelloSearchListener l)
+   {
+      listener = l;
+   }
+   /**
+   * Stops the search currently running, which then returns the best move 
+   * found so far
+   */
+   public void stop()
+   {
+      stopped = true;
+   }
+   /**
+   * Finds the best move for the player to move on another thread. 
+   * Cancelling the returned future stops the search within a few thousand 
+   * nodes.
+   * @param p the position to search
+   * @param e the executor to run the search on; searches must not overlap, 
+   * so it should run one task at a time
+   * @return a future completed with the best move, or OthelloMove.PASS if 
+   * the player to move has no legal moves
+   */
+   public CompletableFuture<Byte> findBestMoveAsync(OthelloPosition p, 
+   Executor e)
+   {
+      pondering = false;
+      return search(p, e);
+   }
+   /**
+   * Starts pondering a position on another thread: searching it with no 
+   * budget while the opponent thinks about the move expected to lead to 
+   * it. Once they play that move, ponderHit gives the search its budget; 
+   * otherwise the returned future should be cancelled.
+   * @param p the position expected after the opponent's move
+   * @param e the executor to run the search on; searches must not overlap, 
+   * so it should run one task at a time
+   * @return a future completed with the best move, or OthelloMove.PASS if 
+   * the player to move has no legal moves
+   */
+   public CompletableFuture<Byte> ponderAsync(OthelloPosition p, Executor e)
+   {
+      pondering = true;
+      return search(p, e);
+   }
+   /**
+   * Tells the search pondering that the opponent played the expected move, 
+   * so that it stops once its usual budget is used up, counting the time 
+   * and nodes spent pondering; it stops at once if they already are
+   */
+   public void ponderHit()
+   {
+      if(timeLimit > 0)
+         deadline = started + timeLimit;
+      pondering = false;
+   }
+   /**
+   * Finds the expected move in a position from the table: the best move 
+   * found for it by an earlier search, which for the position after the 
+   * move just chosen is usually the reply the search expects
+   * @param p the position
+   * @return the expected move, or OthelloMove.PASS if the table has none
+   */
+   public byte predictMove(OthelloPosition p)
+   {
+      long data = table.probe(OthelloZobrist.hash(p.getMover(), 
+         p.getOpponent()));
+      if(data == OthelloTranspositionTable.MISS)
+         return OthelloMove.PASS;
+      byte move = (byte)OthelloTranspositionTable.move(data);
+      return p.isLegal(move) ? move : OthelloMove.PASS;
+   }
+   /**
+   * Runs a search on another thread
+   * @param p the position to search
+   * @param e the executor to run the search on
+   * @return a future completed with the best move
+   */
+   private CompletableFuture<Byte> search(OthelloPosition p, Executor e)
+   {
+      CompletableFuture<Byte> future = new CompletableFuture<>();
+      e.execute(() -> {
+         if(future.isDone())
+            return;
+         request = future;
+         try {
+            future.complete(findBestMove(p));
+         } catch(RuntimeException ex) {
+            future.completeExceptionally(ex);
+         } finally {
+            request = null;
+         }
+      });
+      return future;
+   }
+   /**
+   * Finds the best move for the player to move
+   * @param p the position to search
+   * @return the best move, or OthelloMove.PASS if the player to move has no 
+   * legal moves
+   */
+   public byte findBestMove(OthelloPosition p)
+   {
+      return (byte)findBestMove(p.getMover(), p.getOpponent());
+   }
+   /**
+   * Finds the best move for the current player
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @return the square of the best move (row * 8 + col), or -1 if the
+   * current player has no legal moves
+   */
+   private int findBestMove(long me, long opp)
+   {
+      nodes = cutoffs = firstMoveCutoffs = 0;
+      depth = score = 0;
+      stopped = false;
+      order.clear();
+      started = System.currentTimeMillis();
+      if(timeLimit > 0)
+         deadline = started + timeLimit;
+      else
+         deadline = Long.MAX_VALUE;
+
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(legal == 0)
+         return -1;
+      //the root's moves are kept in a buffer made once, and the rest of the
+      //search works on bitboards passed by value, so a search allocates
+      //nothing
+      int[] moves = rootMoves;
+      for(rootCount = 0; legal != 0; legal &= legal - 1)
+         moves[rootCount++] = Long.numberOfTrailingZeros(legal);
+      if(rootCount == 1)
+         return moves[0];
+
+      table.newSearch();
+      evaluation.setPosition(me, opp);
+      long hash = OthelloZobrist.hash(me, opp);
+      int empties = Long.bitCount(~(me | opp));
+      if(empties <= endgameEmpties)
+         return solveEndgame(me, opp, empties);
+      startHelpers(me, opp);
+      int last = maxDepth > 0 ? Math.min(maxDepth, empties) : empties;
+      for(int d = 1; d <= last && !stopped; d++)
+      {
+         int v = searchRoot(me, opp, hash, d);
+         if(stopped)
+            break;
+         depth = d;
+         score = v;
+         iterationNodes[d] = nodes;
+         if(listener != null)
+            listener.progress(d, (byte)moves[0], v, nodes);
+      }
+      stopHelpers();
+      return moves[0];
+   }
+   /**
+   * Solves the root position exactly with the endgame solver
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param empties the number of empty squares
+   * @return the square of the best move, or of the best found before the 
+   * budget ran out
+   */
+   private int solveEndgame(long me, long opp, int empties)
+   {
+      int move = endgame.findBestMove(me, opp);
+      nodes += endgame.getNodes();
+      if(!outOfBudget(0))
+      {
+         depth = empties;
+         score = endgame.getScore() * WIN;
+         if(listener != null)
+            listener.progress(depth, (byte)move, score, nodes);
+      }
+      return move;
+   }
+   /**
+   * Searches every move of the root position to a certain depth, then moves 
+   * the best one to the front so it is searched first at the next depth
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param hash the hash of the position
+   * @param d the number of plies to search
+   * @return the score of the best move, or 0 if the search was stopped
+   */
+   private int searchRoot(long me, long opp, long hash, int d)
+   {
+      int[] moves = rootMoves;
+      int alpha = -INFINITY;
+      int best = 0;
+      for(int x = 0; x < rootCount; x++)
+      {
+         long bit = 1L << moves[x];
+         long flips = OthelloBitboard.flips(me, opp, moves[x]);
+         evaluation.play(moves[x], flips);
+         int v = -negamax(opp & ~flips, me | flips | bit, 
+            OthelloZobrist.afterMove(hash, moves[x], flips), d - 1, -INFINITY,
+            -alpha);
+         evaluation.undo(moves[x], flips);
+         if(stopped)
+            return 0;
+         if(v > alpha)
+         {
+            alpha = v;
+            best = x;
+         }
+      }
+      int bestMove = moves[best];
+      System.arraycopy(moves, 0, moves, 1, best);
+      moves[0] = bestMove;
+      table.store(hash, d, OthelloTranspositionTable.EXACT, alpha, bestMove);
+      return alpha;
+   }
+   /**
+   * Starts the helper threads, which search the same position as this one, 
+   * each beginning with a different move and depth so that they fill the 
+   * shared table with results this search can use
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   */
+   private void startHelpers(long me, long opp)
+   {
+      if(threads == 1)
+         return;
+      if(pool == null)
+      {
+         pool = new ForkJoinPool(threads - 1);
+         helpers = new OthelloSearch[threads - 1];
+         for(int x = 0; x < helpers.length; x++)
+         {
+            helpers[x] = new OthelloSearch(table, 0, 0);
+            helpers[x].setWeights(evaluation.getWeights());
+         }
+      }
+      tasks = new ForkJoinTask<?>[helpers.length];
+      for(int x = 0; x < helpers.length; x++)
+      {
+         OthelloSearch helper = helpers[x];
+         int id = x + 1;
+         helper.rootCount = rootCount;
+         for(int y = 0; y < rootCount; y++)
+            helper.rootMoves[y] = rootMoves[(y + id) % rootCount];
+         helper.nodes = 0;
+         helper.stopped = false;
+         helper.order.clear();
+         helper.deadline = Long.MAX_VALUE;
+         tasks[x] = pool.submit(() -> helper.help(me, opp, id));
+      }
+   }
+   /**
+   * Searches deeper and deeper as a helper thread until stopped
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param id the number of the helper, starting at 1; its root moves have 
+   * already been set, in the order it tries them first
+   */
+   private void help(long me, long opp, int id)
+   {
+      long hash = OthelloZobrist.hash(me, opp);
+      int empties = Long.bitCount(~(me | opp));
+      evaluation.setPosition(me, opp);
+      for(int d = 1 + id % 2; d <= empties && !stopped; d++)
+         searchRoot(me, opp, hash, d);
+   }
+   /**
+   * Stops the helper threads and waits for them to finish, adding the nodes 
+   * they searched to this search's count
+   */
+   private void stopHelpers()
+   {
+      if(tasks == null)
+         return;
+      for(OthelloSearch helper : helpers)
+         helper.stopped = true;
+      for(int x = 0; x < tasks.length; x++)
+      {
+         tasks[x].join();
+         nodes += helpers[x].nodes;
+      }
+      tasks = null;
+   }
+   /**
+   * Searches a position to a certain depth, finding its score for the
+   * current player
+   * @param me the chips of the current player
+   * @param opp the chips of the opponent
+   * @param hash the hash of the position
+   * @param d the number of plies left to search
+   * @param alpha the score the current player is already guaranteed
+   * @param beta the score the opponent is already guaranteed
+   * @return the score of the position, exact if between alpha and beta
+   */
+   private int negamax(long me, long opp, long hash, int d, int alpha, int beta)
+   {
+      nodes++;
+      if(nodes % CHECK_INTERVAL == 0)
+         checkBudget();
+      if(stopped)
+         return 0;
+      if(d == 0)
+         return Math.max(-WIN + 1, Math.min(WIN - 1, evaluation.evaluate(me,
+            opp)));
+
+      long entry = table.probe(hash);
+      int hashMove = -1;
+      if(entry != OthelloTranspositionTable.MISS)
+      {
+         hashMove = OthelloTranspositionTable.move(entry);
+         if(OthelloTranspositionTable.depth(entry) >= d)
+         {
+            int v = OthelloTranspositionTable.score(entry);
+            int bound = OthelloTranspositionTable.bound(entry);
+            if(bound == OthelloTranspositionTable.EXACT
+               || (bound == OthelloTranspositionTable.LOWER && v >= beta)
+               || (bound == OthelloTranspositionTable.UPPER && v <= alpha))
+               return v;
+         }
+      }
+
+      long legal = OthelloBitboard.legalMoves(me, opp);
+      if(legal == 0)
+      {
+         if(OthelloBitboard.legalMoves(opp, me) == 0)
+            return OthelloEndgame.finalScore(me, opp) * WIN;
+         evaluation.pass();
+         int v = -negamax(opp, me, OthelloZobrist.afterPass(hash), d - 1,
+            -beta, -alpha);
+         evaluation.pass();
+         return v;
+      }
+      int originalAlpha = alpha;
+      int best = -INFINITY;
+      int bestMove = -1;
+      int empties = Long.bitCount(~(me | opp));
+      int n = order.order(me, opp, legal, hashMove, empties, d);
+      for(int x = 0; x < n; x++)
+      {
+         int sq = order.next(empties, x, n);
+         long flips = OthelloBitboard.flips(me, opp, sq);
+         evaluation.play(sq, flips);
+         int v = -negamax(opp & ~flips, me | flips | (1L << sq),
+            OthelloZobrist.afterMove(hash, sq, flips), d - 1, -beta, -alpha);
+         evaluation.undo(sq, flips);
+         if(v > best)
+         {
+            best = v;
+            bestMove = sq;
+            if(v > alpha)
+               alpha = v;
+            if(alpha >= beta)
+            {
+               if(!stopped)
+               {
+                  order.cutoff(sq, empties, d);
+                  cutoffs++;
+                  if(x == 0)
+                     firstMoveCutoffs++;
+               }
+               break;
+            }
+         }
+      }
+      if(stopped)
+         return 0;
+      int bound;
+      if(best <= originalAlpha)
+         bound = OthelloTranspositionTable.UPPER;
+      else if(best >= beta)
+         bound = OthelloTranspositionTable.LOWER;
+      else
+         bound = OthelloTranspositionTable.EXACT;
+      table.store(hash, d, bound, best, bestMove);
+      return best;
+   }
+   /**
+   * Stops the current search if it has run out of time or nodes, or if it 
+   * was requested asynchronously and has been cancelled
+   */
+   private void checkBudget()
+   {
+      if(outOfBudget(0))
+         stopped = true;
+   }
+   /**
+   * Checks whether the current search has been stopped, has been cancelled, 
+   * or has run out of time or nodes
+   * @param extraNodes nodes visited by the endgame solver on behalf of this 
+   * search, not yet counted
+   * @return whether or not the search must stop
+   */
+   boolean outOfBudget(long extraNodes)
+   {
+      CompletableFuture<Byte> r = request;
+      if(stopped || (r != null && r.isCancelled()))
+         return true;
+      if(pondering)
+         return false;
+      if(nodeLimit > 0 && nodes + extraNodes >= nodeLimit)
+         return true;
+      return System.currentTimeMillis() >= deadline;
+   }
+   /**
+   * Returns the depth of the deepest finished iteration of the last search
+   * @return the depth searched, in plies
+   */
+   public int getDepth()
+   {
+      return depth;
+   }
+   /**
+   * Returns the score of the move found by the last search
+   * @return the score of the best move for the player who moved
+   */
+   public int getScore()
+   {
+      return score;
+   }
+   /**
+   * Returns the effective branching factor of the last search: on average, 
+   * how many times more nodes each finished iteration took than the one 
+   * before, on the calling thread
+   * @return the effective branching factor, or 0 if fewer than three 
+   * iterations finished
+   */
+   public double getBranchingFactor()
+   {
+      //the first iteration only looks at the root's moves, so is left out
+      if(depth < 3)
+         return 0;
+      double first = iterationNodes[2] - iterationNodes[1];
+      double last = iterationNodes[depth] - iterationNodes[depth - 1];
+      return Math.pow(last / first, 1.0 / (depth - 2));
+   }
+   /**
+   * Returns how often the first move tried in a position was good enough 
+   * to stop its search, of all the times a move was, in the last search on 
+   * the calling thread
+   * @return the share of cutoffs made by the first move, from 0 to 1
+   */
+   public double getFirstMoveCutoffRate()
+   {
+      return cutoffs == 0 ? 0 : (double)firstMoveCutoffs / cutoffs;
+   }
+   /**
+   * Returns the number of nodes visited by the last search, on all threads
+   * @return the number of nodes visited
+   */
+   public long getNodes()
+   {
+      return nodes;
+   }
+}
@@ -0,0 +1,20 @@
+/**
+ *  An OthelloSearchListener is told about the progress of an OthelloSearch 
+ *  each time it finishes searching to a new depth. It is called on the 
+ *  thread running the search, so a listener updating the gameboard must 
+ *  pass the update on to the Event Dispatch Thread.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public interface OthelloSearchListener
+{
+   /**
+   * Receives the result of the deepest finished iteration of a search
+   * @param depth the depth searched, in plies
+   * @param move the best move found so far
+   * @param score the score of the best move for the player to move
+   * @param nodes the number of nodes visited so far by the calling thread
+   */
+   void progress(int depth, byte move, int score, long nodes);
+}
@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ *  OthelloSelfPlay plays the AI against itself many times on every core,
+ *  writing each game to a file for OthelloTrainer to learn from. The first
+ *  few moves of each game are random so that no two games are alike, and
+ *  the rest are chosen by an OthelloSearch with a small node budget, with
+ *  no window involved (see OthelloGame).
+ *
+ *  The file starts with the magic number "OTHG" and a version, followed by
+ *  one record per game: the number of moves (one unsigned byte), the moves
+ *  (one byte each, row * 8 + col, or -1 for a pass), and the final chip
+ *  difference for black, counting empty squares for the winner (one signed
+ *  byte). Every position of a game can be found by playing its moves from
+ *  the starting position, so a game takes about 60 bytes. The file is an
+ *  OthelloArchive, so more games can be added to it, and it can be indexed
+ *  or exported.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloSelfPlay
+{
+   /**
+   * The size of the table of each thread
+   */
+   private static final long TABLE_BYTES = 4L << 20;
+   /**
+   * How many games are played between reports of progress
+   */
+   private static final long REPORT_INTERVAL = 1000;
+   /**
+   * The number of games started so far
+   */
+   private static final AtomicLong started = new AtomicLong();
+   /**
+   * The number of games finished so far
+   */
+   private static final AtomicLong finished = new AtomicLong();
+
+   /**
+   * Plays games and writes them to a file
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: the file to write, the number of games, and
+   * optionally the nodes searched per move (default 2000), the number of
+   * random moves at the start of each game (default 8), a file of weights
+   * to play with ("-" for the default weights), and the seed
+   * @throws Exception if the file cannot be written, or a game fails
+   */
+   public static void main(String[] args) throws Exception
+   {
+      if(args.length < 2)
+      {
+         System.out.println("Usage: java OthelloSelfPlay file games [nodes] " +
+            "[random moves] [weights file] [seed]");
+         return;
+      }
+      Path file = Paths.get(args[0]);
+      long games = Long.parseLong(args[1]);
+      long nodes = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+      int randomMoves = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+      int[] weights = args.length > 4 && !args[4].equals("-") ?
+         OthelloEvaluation.load(Paths.get(args[4])) :
+         OthelloEvaluation.defaultWeights();
+      long seed = args.length > 5 ? Long.parseLong(args[5]) :
+         System.nanoTime();
+
+      int threads = Runtime.getRuntime().availableProcessors();
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+      long start = System.nanoTime();
+      Files.deleteIfExists(file);
+      try(OthelloArchive.Writer out = new OthelloArchive.Writer(file))
+      {
+         Future<?>[] tasks = new Future<?>[threads];
+         for(int x = 0; x < threads; x++)
+         {
+            Random rand = new Random(seed + x);
+            tasks[x] = workers.submit(() -> {
+               play(out, games, nodes, randomMoves, weights, rand, start);
+               return null;
+            });
+         }
+         for(Future<?> t : tasks)
+            t.get();
+      }
+      finally
+      {
+         workers.shutdown();
+         workers.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      System.out.printf("%,d games written to %s in %.1fs%n", finished.get(),
+         file, (System.nanoTime() - start) / 1e9);
+   }
+   /**
+   * Plays games on the calling thread until enough have been started, and
+   * writes each one as it finishes
+   * @param out the file being written, shared between the threads
+   * @param games the number of games to play on all the threads
+   * @param nodes the nodes searched per move
+   * @param randomMoves the number of random moves at the start of a game
+   * @param weights the weights of the evaluation
+   * @param rand chooses the random moves
+   * @param start when the games were started, from System.nanoTime
+   * @throws IOException if the file cannot be written
+   */
+   private static void play(OthelloArchive.Writer out, long games, long nodes,
+   int randomMoves, int[] weights, Random rand, long start) throws IOException
+   {
+      OthelloSearch search = new OthelloSearch(new OthelloTranspositionTable(
+         TABLE_BYTES, OthelloTranspositionTable.Replacement.ALWAYS_REPLACE), 0,
+         nodes);
+      search.setWeights(weights);
+      OthelloGame game = new OthelloGame();
+      while(started.getAndIncrement() < games)
+      {
+         game.reset();
+         while(!game.isGameOver())
+         {
+            long legal = game.legalMoves();
+            if(legal == 0)
+               game.pass();
+            else if(game.getMoveCount() < randomMoves)
+            {
+               for(int x = rand.nextInt(Long.bitCount(legal)); x > 0; x--)
+                  legal &= legal - 1;
+               game.play((byte)Long.numberOfTrailingZeros(legal));
+            }
+            else
+               game.play(search.findBestMove(game.getPosition()));
+         }
+         synchronized(out)
+         {
+            out.write(game);
+         }
+         long n = finished.incrementAndGet();
+         if(n % REPORT_INTERVAL == 0)
+            System.out.printf("%,d games, %.1f games/s%n", n, n * 1e9 /
+               (System.nanoTime() - start));
+      }
+   }
+}
@@ -0,0 +1,659 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+/**
+ *  An OthelloServer hosts games of Othello for clients on the network, with
+ *  the rules of OthelloGame and moves from the AI on request, so games can
+ *  be played without the window. Each connection is a session that can
+ *  have several games going at once.
+ *
+ *  Connections are served by a few event loops, each a thread with its own
+ *  Selector that reads, runs and answers the commands of the connections
+ *  given to it, so one thread serves thousands of connections and no locks
+ *  are taken. Playing a move takes a few microseconds, so it is done right
+ *  on the loop; AI moves take far longer and are found by a separate pool
+ *  of engine threads, each with its own OthelloSearch and table, and the
+ *  answer is handed back to the connection's loop. While a connection
+ *  waits for the AI its other commands wait with it, so answers always come
+ *  in the order the commands were sent, and a client may send several
+ *  commands without waiting for each answer.
+ *
+ *  The protocol is text, one command per line, in ASCII. Every command is
+ *  answered by one line, "OK" and the result, or "ERR" and what was wrong.
+ *  Moves are named as by OthelloMove ("D3" or "PASS"), and a game's state
+ *  is "X" or "O" for the player to move, or "OVER" and the chips of black
+ *  and of white once it has ended.
+ *  NEW [position] - starts a game, from the usual starting position or one
+ *     written as by OthelloPosition; answers with the game's id
+ *  MOVE id move - plays a move; answers with the game's state
+ *  LEGAL id - answers with the legal moves, "PASS" if the player to move
+ *     must pass, or nothing if the game is over
+ *  AI id - plays the AI's move for the player to move; answers with the
+ *     move and the game's state
+ *  POS id - answers with the 64 squares as by OthelloPosition and the
+ *     game's state
+ *  END id - ends a game, freeing its id
+ *  QUIT - answers and closes the connection
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloServer implements Closeable
+{
+   /**
+   * The port the server listens on if none is given
+   */
+   public static final int DEFAULT_PORT = 7070;
+   /**
+   * The longest a command can be, in bytes; longer ones close the connection
+   */
+   private static final int MAX_LINE = 256;
+   /**
+   * The size of each connection's buffer of answers not yet sent; commands
+   * are not read while it is more than half full, so a client that sends
+   * without reading is slowed down rather than using up memory
+   */
+   private static final int OUT_BYTES = 4096;
+   /**
+   * The most games a connection can have going at once
+   */
+   private static final int MAX_GAMES = 64;
+   /**
+   * The most connections waiting to be accepted
+   */
+   private static final int BACKLOG = 4096;
+   /**
+   * The size of the table of each engine thread
+   */
+   private static final long TABLE_BYTES = 4L << 20;
+   /**
+   * Splits a command into words
+   */
+   private static final Pattern WORDS = Pattern.compile("\\s+");
+   /**
+   * The socket the server accepts connections on
+   */
+   private final ServerSocketChannel server;
+   /**
+   * The event loops the connections are shared between
+   */
+   private final Loop[] loops;
+   /**
+   * The threads that find AI moves
+   */
+   private final ExecutorService engines;
+   /**
+   * The search of each engine thread, made when the thread first needs it
+   */
+   private final ThreadLocal<OthelloSearch> searches;
+   /**
+   * The number of connections accepted so far, which chooses the loop
+   * given the next one
+   */
+   private long accepted;
+   /**
+   * The number of connections open
+   */
+   private final AtomicLong sessions = new AtomicLong();
+   /**
+   * The number of commands answered so far
+   */
+   private final AtomicLong commands = new AtomicLong();
+   /**
+   * Whether or not the server has been closed
+   */
+   private volatile boolean closed;
+
+   /**
+   * Constructs an OthelloServer listening on an address, which starts
+   * serving once started
+   * @param address the address to listen on
+   * @param loopCount the number of event loops
+   * @param engineCount the number of threads finding AI moves
+   * @param time the most time the AI can take for a move in milliseconds,
+   * or 0 for no limit
+   * @param nodes the most nodes the AI can search for a move, or 0 for no
+   * limit; time and nodes must not both be 0
+   * @throws IOException if the address cannot be listened on
+   */
+   public OthelloServer(InetSocketAddress address, int loopCount,
+   int engineCount, long time, long nodes) throws IOException
+   {
+      if(time <= 0 && nodes <= 0)
+         throw new IllegalArgumentException("The AI needs a time or node " +
+            "limit");
+      loops = new Loop[Math.max(1, loopCount)];
+      for(int x = 0; x < loops.length; x++)
+         loops[x] = new Loop(x);
+      server = ServerSocketChannel.open();
+      server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      server.bind(address, BACKLOG);
+      server.configureBlocking(false);
+      server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+      engines = Executors.newFixedThreadPool(Math.max(1, engineCount), r -> {
+         Thread t = new Thread(r, "OthelloServer engine");
+         t.setDaemon(true);
+         return t;
+      });
+      searches = ThreadLocal.withInitial(() -> new OthelloSearch(
+         new OthelloTranspositionTable(TABLE_BYTES,
+         OthelloTranspositionTable.Replacement.ALWAYS_REPLACE), time, nodes));
+   }
+   /**
+   * Starts the event loops, each on its own thread
+   */
+   public void start()
+   {
+      for(Loop loop : loops)
+         loop.thread.start();
+   }
+   /**
+   * Returns the port the server listens on, which is useful if it was
+   * given port 0 to choose any free one
+   * @return the port
+   */
+   public int getPort()
+   {
+      return server.socket().getLocalPort();
+   }
+   /**
+   * Returns the number of connections open
+   * @return the number of connections
+   */
+   public long getSessions()
+   {
+      return sessions.get();
+   }
+   /**
+   * Returns the number of commands answered so far
+   * @return the number of commands
+   */
+   public long getCommands()
+   {
+      return commands.get();
+   }
+   /**
+   * Stops the server, closing every connection
+   * @throws IOException if the socket cannot be closed
+   */
+   public void close() throws IOException
+   {
+      closed = true;
+      for(Loop loop : loops)
+         loop.selector.wakeup();
+      for(Loop loop : loops)
+         try {
+            loop.thread.join();
+         } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      engines.shutdownNow();
+      server.close();
+   }
+   /**
+   * Accepts every connection waiting, giving each to the next loop in turn
+   * @throws IOException if a connection cannot be accepted
+   */
+   private void accept() throws IOException
+   {
+      SocketChannel channel;
+      while((channel = server.accept()) != null)
+      {
+         channel.configureBlocking(false);
+         channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+         SocketChannel c = channel;
+         Loop loop = loops[(int)(accepted++ % loops.length)];
+         loop.execute(() -> loop.open(c));
+      }
+   }
+
+   /**
+    *  A Loop is an event loop: a thread that waits on its Selector for its
+    *  connections to be ready and serves them, and runs the tasks handed to
+    *  it by other threads, such as new connections and AI moves.
+    **/
+   private class Loop implements Runnable
+   {
+      /**
+      * Tells which of the loop's connections are ready
+      */
+      private final Selector selector;
+      /**
+      * The thread the loop runs on
+      */
+      private final Thread thread;
+      /**
+      * The tasks handed to the loop by other threads
+      */
+      private final ConcurrentLinkedQueue<Runnable> tasks =
+         new ConcurrentLinkedQueue<Runnable>();
+
+      /**
+      * Constructs a Loop
+      * @param id the number of the loop, used to name its thread
+      * @throws IOException if the selector cannot be opened
+      */
+      private Loop(int id) throws IOException
+      {
+         selector = Selector.open();
+         thread = new Thread(this, "OthelloServer loop " + id);
+      }
+      /**
+      * Hands a task to the loop to run on its thread
+      * @param task the task
+      */
+      private void execute(Runnable task)
+      {
+         tasks.add(task);
+         selector.wakeup();
+      }
+      /**
+      * Serves connections until the server is closed, then closes them
+      */
+      public void run()
+      {
+         try {
+            while(!closed)
+            {
+               selector.select();
+               Runnable task;
+               while((task = tasks.poll()) != null)
+                  task.run();
+               Iterator<SelectionKey> keys = selector.selectedKeys()
+                  .iterator();
+               while(keys.hasNext())
+               {
+                  SelectionKey key = keys.next();
+                  keys.remove();
+                  if(!key.isValid())
+                     continue;
+                  if(key.isAcceptable())
+                  {
+                     try {
+                        accept();
+                     } catch(IOException e) {
+                        System.err.println("Cannot accept: " + e.getMessage());
+                     }
+                  }
+                  else
+                     ((Session)key.attachment()).ready(key);
+               }
+            }
+         } catch(IOException e) {
+            e.printStackTrace();
+         } finally {
+            for(SelectionKey key : selector.keys())
+               if(key.attachment() != null)
+                  ((Session)key.attachment()).close();
+            try {
+               selector.close();
+            } catch(IOException e) {
+            }
+         }
+      }
+      /**
+      * Starts serving a new connection
+      * @param channel the connection
+      */
+      private void open(SocketChannel channel)
+      {
+         try {
+            Session s = new Session(this, channel);
+            s.key = channel.register(selector, SelectionKey.OP_READ, s);
+            sessions.incrementAndGet();
+         } catch(IOException e) {
+            try {
+               channel.close();
+            } catch(IOException ex) {
+            }
+         }
+      }
+   }
+
+   /**
+    *  A Session is one connection and its games. It is only used by the
+    *  thread of its loop.
+    **/
+   private class Session
+   {
+      /**
+      * The loop serving the connection
+      */
+      private final Loop loop;
+      /**
+      * The connection
+      */
+      private final SocketChannel channel;
+      /**
+      * The connection's registration with the loop's selector
+      */
+      private SelectionKey key;
+      /**
+      * The bytes read but not yet run as commands
+      */
+      private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+      /**
+      * The answers not yet sent
+      */
+      private final ByteBuffer out = ByteBuffer.allocate(OUT_BYTES);
+      /**
+      * The games of the connection by id, with null for ids that are free
+      */
+      private final List<OthelloGame> games = new ArrayList<OthelloGame>();
+      /**
+      * Whether or not the connection is waiting for the AI
+      */
+      private boolean thinking;
+      /**
+      * Whether or not the connection is closed once its answers are sent
+      */
+      private boolean quitting;
+
+      /**
+      * Constructs a Session
+      * @param l the loop serving the connection
+      * @param c the connection
+      */
+      private Session(Loop l, SocketChannel c)
+      {
+         loop = l;
+         channel = c;
+      }
+      /**
+      * Serves the connection once it is ready to be read or written
+      * @param k the connection's key
+      */
+      private void ready(SelectionKey k)
+      {
+         try {
+            if(k.isWritable())
+               flush();
+            if(k.isValid() && k.isReadable())
+            {
+               if(channel.read(in) < 0)
+               {
+                  close();
+                  return;
+               }
+               run();
+            }
+            if(k.isValid())
+               flush();
+         } catch(IOException e) {
+            close();
+         }
+      }
+      /**
+      * Runs each whole command read, unless the connection is waiting for
+      * the AI or has too many answers not yet sent
+      * @throws IOException if a command is too long
+      */
+      private void run() throws IOException
+      {
+         byte[] bytes = in.array();
+         int start = 0;
+         for(int x = 0; x < in.position() && !thinking && !quitting &&
+            out.position() <= OUT_BYTES / 2; x++)
+            if(bytes[x] == '\n')
+            {
+               String line = new String(bytes, start, x - start,
+                  StandardCharsets.US_ASCII);
+               start = x + 1;
+               answer(command(line));
+            }
+         if(start == 0 && !in.hasRemaining() && !thinking &&
+            out.position() <= OUT_BYTES / 2)
+            throw new IOException("Command too long");
+         in.flip().position(start);
+         in.compact();
+      }
+      /**
+      * Runs a command
+      * @param line the command
+      * @return the answer, or null if it is given later
+      */
+      private String command(String line)
+      {
+         String[] words = WORDS.split(line.trim());
+         try {
+            switch(words[0].toUpperCase())
+            {
+               case "NEW":
+                  return "OK " + add(words.length > 1 ? OthelloPosition.parse(
+                     line.trim().substring(words[0].length())) :
+                     OthelloPosition.START);
+               case "MOVE":
+                  if(words.length < 3)
+                     return "ERR MOVE needs a game and a move";
+                  OthelloGame game = game(words);
+                  game.play(OthelloMove.parse(words[2]));
+                  return "OK " + state(game);
+               case "LEGAL":
+                  return "OK" + legalMoves(game(words));
+               case "AI":
+                  think(game(words));
+                  return null;
+               case "POS":
+                  game = game(words);
+                  return "OK " + game.getPosition().toString().substring(0, 64) +
+                     " " + state(game);
+               case "END":
+                  game(words);
+                  games.set(Integer.parseInt(words[1]), null);
+                  return "OK";
+               case "QUIT":
+                  quitting = true;
+                  return "OK";
+               default:
+                  return "ERR Unknown command: " + words[0];
+            }
+         } catch(IllegalArgumentException | IllegalStateException e) {
+            return "ERR " + e.getMessage();
+         }
+      }
+      /**
+      * Starts a game, giving it the lowest free id
+      * @param p the position the game starts from
+      * @return the game's id
+      * @throws IllegalStateException if the connection has too many games
+      */
+      private int add(OthelloPosition p)
+      {
+         int id = games.indexOf(null);
+         if(id < 0)
+         {
+            if(games.size() == MAX_GAMES)
+               throw new IllegalStateException("Too many games");
+            id = games.size();
+            games.add(null);
+         }
+         games.set(id, new OthelloGame(p));
+         return id;
+      }
+      /**
+      * Finds the game a command is about
+      * @param words the words of the command, the second being the id
+      * @return the game
+      * @throws IllegalArgumentException if there is no such game
+      */
+      private OthelloGame game(String[] words)
+      {
+         if(words.length < 2)
+            throw new IllegalArgumentException(words[0] + " needs a game");
+         int id = Integer.parseInt(words[1]);
+         if(id < 0 || id >= games.size() || games.get(id) == null)
+            throw new IllegalArgumentException("No game " + id);
+         return games.get(id);
+      }
+      /**
+      * Has an engine thread find the AI's move in a game, and plays and
+      * answers with it on the loop once found; until then no more commands
+      * are run
+      * @param game the game
+      * @throws IllegalStateException if the game is over
+      */
+      private void think(OthelloGame game)
+      {
+         if(game.isGameOver())
+            throw new IllegalStateException("The game is over");
+         OthelloPosition p = game.getPosition();
+         thinking = true;
+         engines.execute(() -> {
+            String error = null;
+            byte move = OthelloMove.PASS;
+            try {
+               move = searches.get().findBestMove(p);
+            } catch(RuntimeException e) {
+               error = "ERR " + e;
+            }
+            byte m = move;
+            String e = error;
+            loop.execute(() -> {
+               thinking = false;
+               if(!channel.isOpen())
+                  return;
+               if(e == null)
+                  game.play(m);
+               answer(e != null ? e : "OK " + OthelloMove.toString(m) + " " +
+                  state(game));
+               try {
+                  run();
+                  flush();
+               } catch(IOException ex) {
+                  close();
+               }
+            });
+         });
+      }
+      /**
+      * Queues an answer to be sent
+      * @param s the answer, or null if there is none yet
+      */
+      private void answer(String s)
+      {
+         if(s == null)
+            return;
+         for(int x = 0; x < s.length(); x++)
+            out.put((byte)s.charAt(x));
+         out.put((byte)'\n');
+         commands.incrementAndGet();
+      }
+      /**
+      * Sends as many answers as the connection takes, and chooses what to
+      * wait for next: to send the rest of the answers, for more commands,
+      * or neither while the AI is thinking
+      * @throws IOException if the connection fails
+      */
+      private void flush() throws IOException
+      {
+         out.flip();
+         channel.write(out);
+         out.compact();
+         if(quitting && out.position() == 0)
+         {
+            close();
+            return;
+         }
+         int ops = 0;
+         if(out.position() > 0)
+            ops |= SelectionKey.OP_WRITE;
+         if(!thinking && !quitting && out.position() <= OUT_BYTES / 2)
+            ops |= SelectionKey.OP_READ;
+         if(key.interestOps() != ops)
+            key.interestOps(ops);
+      }
+      /**
+      * Closes the connection
+      */
+      private void close()
+      {
+         if(!channel.isOpen())
+            return;
+         key.cancel();
+         sessions.decrementAndGet();
+         try {
+            channel.close();
+         } catch(IOException e) {
+         }
+      }
+   }
+
+   /**
+   * Returns the state of a game as sent to clients
+   * @param game the game
+   * @return "X" or "O" for the player to move, or "OVER" and the chips of
+   * black and of white
+   */
+   private static String state(OthelloGame game)
+   {
+      if(game.isGameOver())
+         return "OVER " + game.getChips(1) + " " + game.getChips(2);
+      return game.getColorToMove() == 1 ? "X" : "O";
+   }
+   /**
+   * Lists the legal moves of a game as sent to clients
+   * @param game the game
+   * @return each legal move after a space, " PASS" if the player to move
+   * must pass, or nothing if the game is over
+   */
+   private static String legalMoves(OthelloGame game)
+   {
+      if(game.isGameOver())
+         return "";
+      long legal = game.legalMoves();
+      if(legal == 0)
+         return " PASS";
+      StringBuilder sb = new StringBuilder(3 * Long.bitCount(legal));
+      for(; legal != 0; legal &= legal - 1)
+         sb.append(' ').append(OthelloMove.toString(
+            (byte)Long.numberOfTrailingZeros(legal)));
+      return sb.toString();
+   }
+   /**
+   * Runs a server until it is killed, printing how busy it is every few
+   * seconds
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: optionally the port (default 7070), the number of
+   * event loops (default 1), the number of engine threads (default the
+   * number of cores) and the nodes the AI searches for a move (default
+   * 20000)
+   * @throws Exception if the server cannot be started
+   */
+   public static void main(String[] args) throws Exception
+   {
+      int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+      int loopCount = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+      int cores = Runtime.getRuntime().availableProcessors();
+      int engineCount = args.length > 2 ? Integer.parseInt(args[2]) : cores;
+      long nodes = args.length > 3 ? Long.parseLong(args[3]) : 20000;
+      OthelloServer server = new OthelloServer(new InetSocketAddress(port),
+         loopCount, engineCount, 0, nodes);
+      server.start();
+      System.out.println("Serving Othello on port " + server.getPort());
+      long last = 0;
+      while(true)
+      {
+         TimeUnit.SECONDS.sleep(10);
+         long n = server.getCommands();
+         System.out.printf("%,d connections, %,.0f commands/s%n",
+            server.getSessions(), (n - last) / 10.0);
+         last = n;
+      }
+   }
+}
@@ -0,0 +1,161 @@
+/**
+ *  OthelloSymmetry handles the eight symmetries of the board: the four
+ *  rotations and four reflections, each of which turns a position into one
+ *  that plays exactly the same. Every position can be put into a canonical
+ *  form, whichever of its eight forms comes first, so that a cache, book
+ *  or database can store all of them once under the canonical form and
+ *  turn moves found there back into moves for the original position.
+ *
+ *  A symmetry is numbered from 0 to 7: bit 1 mirrors the columns, bit 2
+ *  mirrors the rows, and bit 4 then swaps rows with columns (a reflection
+ *  in the main diagonal). 0 leaves the board as it is; 3 turns it halfway
+ *  round, and 5 and 6 turn it a quarter of the way round either way.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public final class OthelloSymmetry
+{
+   /**
+   * The symmetry that leaves the board as it is
+   */
+   public static final int IDENTITY = 0;
+
+   /**
+   * OthelloSymmetry only holds static methods and cannot be instantiated
+   */
+   private OthelloSymmetry()
+   {
+   }
+   /**
+   * Reflects or rotates a bitboard
+   * @param b the bitboard
+   * @param s the number of the symmetry
+   * @return the reflected or rotated bitboard
+   */
+   public static long transform(long b, int s)
+   {
+      if((s & 1) != 0)
+         b = flipColumns(b);
+      if((s & 2) != 0)
+         b = Long.reverseBytes(b);
+      if((s & 4) != 0)
+         b = transpose(b);
+      return b;
+   }
+   /**
+   * Reflects or rotates a position
+   * @param p the position
+   * @param s the number of the symmetry
+   * @return the reflected or rotated position, with the same player to move
+   */
+   public static OthelloPosition transform(OthelloPosition p, int s)
+   {
+      return new OthelloPosition(transform(p.getBlack(), s), transform(
+         p.getWhite(), s), p.isBlackToMove());
+   }
+   /**
+   * Finds the square a square is moved to by a symmetry
+   * @param sq the square (row * 8 + col)
+   * @param s the number of the symmetry
+   * @return the square it is moved to
+   */
+   public static int transformSquare(int sq, int s)
+   {
+      int row = sq / 8, col = sq % 8;
+      if((s & 1) != 0)
+         col = 7 - col;
+      if((s & 2) != 0)
+         row = 7 - row;
+      if((s & 4) != 0)
+         return col * 8 + row;
+      return row * 8 + col;
+   }
+   /**
+   * Finds the move a move becomes under a symmetry
+   * @param move the move, which may be OthelloMove.PASS
+   * @param s the number of the symmetry
+   * @return the move it becomes
+   */
+   public static byte transformMove(byte move, int s)
+   {
+      if(move == OthelloMove.PASS)
+         return move;
+      return (byte)transformSquare(move, s);
+   }
+   /**
+   * Finds the symmetry that undoes another
+   * @param s the number of the symmetry
+   * @return the number of the symmetry that undoes it
+   */
+   public static int inverse(int s)
+   {
+      //swapping rows with columns last turns a mirror of the columns done
+      //first into a mirror of the rows, and the other way round
+      if((s & 4) == 0)
+         return s;
+      return 4 | (s & 1) << 1 | (s & 2) >> 1;
+   }
+   /**
+   * Finds the symmetry that puts a position into its canonical form: the
+   * form whose chips for the player to move, then for the opponent, come
+   * first as unsigned numbers
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the number of the symmetry; transforming both bitboards by it
+   * gives the canonical form, and transforming back by its inverse gives
+   * the original position
+   */
+   public static int canonical(long me, long opp)
+   {
+      int best = IDENTITY;
+      long bestMe = me, bestOpp = opp;
+      for(int s = 1; s < 8; s++)
+      {
+         long m = transform(me, s), o = transform(opp, s);
+         int c = Long.compareUnsigned(m, bestMe);
+         if(c < 0 || (c == 0 && Long.compareUnsigned(o, bestOpp) < 0))
+         {
+            best = s;
+            bestMe = m;
+            bestOpp = o;
+         }
+      }
+      return best;
+   }
+   /**
+   * Puts a position into its canonical form
+   * @param p the position
+   * @return the canonical form, with the same player to move
+   */
+   public static OthelloPosition canonical(OthelloPosition p)
+   {
+      return transform(p, canonical(p.getMover(), p.getOpponent()));
+   }
+   /**
+   * Mirrors a bitboard left to right, so column c becomes column 7 - c
+   * @param b the bitboard
+   * @return the mirrored bitboard
+   */
+   private static long flipColumns(long b)
+   {
+      b = (b >>> 1 & 0x5555555555555555L) | (b & 0x5555555555555555L) << 1;
+      b = (b >>> 2 & 0x3333333333333333L) | (b & 0x3333333333333333L) << 2;
+      return (b >>> 4 & 0x0f0f0f0f0f0f0f0fL) | (b & 0x0f0f0f0f0f0f0f0fL) << 4;
+   }
+   /**
+   * Mirrors a bitboard in its main diagonal, so (row, col) becomes
+   * (col, row)
+   * @param b the bitboard
+   * @return the mirrored bitboard
+   */
+   private static long transpose(long b)
+   {
+      long t = 0x0f0f0f0f00000000L & (b ^ b << 28);
+      b ^= t ^ t >>> 28;
+      t = 0x3333000033330000L & (b ^ b << 14);
+      b ^= t ^ t >>> 14;
+      t = 0x5500550055005500L & (b ^ b << 7);
+      return b ^ t ^ t >>> 7;
+   }
+}
@@ -0,0 +1,530 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ *  OthelloTournament plays matches between settings of the AI without a
+ *  window, to find which settings play best. Each engine is a name and its
+ *  settings, written as "name:key=value,key=value", with the keys:
+ *  nodes - the most nodes searched for a move (default 20000 if there is
+ *     no time or depth limit)
+ *  time - the most milliseconds taken for a move
+ *  depth - the deepest a search goes
+ *  endgame - the empty squares at or below which the endgame is solved
+ *     (default 18)
+ *  ordering - "off" to turn off move ordering beyond the table's move
+ *  hash - the size of the table in megabytes (default 4)
+ *  weights - a file of trained weights to evaluate positions with
+ *  book - an opening book to play from while it has a move
+ *
+ *  Either every engine plays every other (round robin), or the first plays
+ *  each of the others (a gauntlet). Every pairing plays each opening twice,
+ *  with the colors swapped, so neither engine gains from a lucky opening.
+ *  The openings are positions a few random moves into a game, no two the
+ *  same even when turned or reflected, in shuffled order; or they are
+ *  taken from the games of an OthelloArchive. Games are played at once on
+ *  every core, each thread with its own search and table for each engine,
+ *  cleared before every game.
+ *
+ *  Once done, the score of each pairing and of each engine against all its
+ *  opponents is printed with the Elo difference it implies and a 95% error
+ *  bar, along with the number of games played a second.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloTournament
+{
+   /**
+   * How many games are played between reports of progress
+   */
+   private static final int REPORT_INTERVAL = 100;
+   /**
+   * How many standard deviations either side of the score the error bars
+   * span, for 95% confidence
+   */
+   private static final double Z95 = 1.96;
+   /**
+   * The engines playing
+   */
+   private final List<Engine> engines;
+   /**
+   * Whether the first engine plays each of the others, rather than every
+   * engine playing every other
+   */
+   private final boolean gauntlet;
+   /**
+   * The openings, each played twice by every pairing
+   */
+   private final List<OthelloPosition> openings;
+   /**
+   * For each pair of engines, the wins, draws and losses of the first
+   * against the second
+   */
+   private final int[][][] results;
+   /**
+   * The number of games finished
+   */
+   private int finished;
+
+   /**
+   * Constructs an OthelloTournament
+   * @param e the engines playing
+   * @param g whether the first engine plays each of the others, rather than
+   * every engine playing every other
+   * @param o the openings, each played twice by every pairing
+   */
+   public OthelloTournament(List<Engine> e, boolean g,
+   List<OthelloPosition> o)
+   {
+      if(e.size() < 2)
+         throw new IllegalArgumentException("A tournament needs two engines");
+      engines = e;
+      gauntlet = g;
+      openings = o;
+      results = new int[e.size()][e.size()][3];
+   }
+   /**
+   * Plays every game of the tournament
+   * @param threads the number of games played at once
+   * @return the number of games played
+   * @throws Exception if a game fails
+   */
+   public int play(int threads) throws Exception
+   {
+      List<int[]> games = new ArrayList<int[]>();
+      for(int a = 0; a < engines.size(); a++)
+         for(int b = a + 1; b < engines.size(); b++)
+            if(!gauntlet || a == 0)
+               for(int o = 0; o < openings.size(); o++)
+               {
+                  games.add(new int[] {a, b, o});
+                  games.add(new int[] {b, a, o});
+               }
+      ThreadLocal<Player[]> players = ThreadLocal.withInitial(() -> {
+         Player[] p = new Player[engines.size()];
+         for(int x = 0; x < p.length; x++)
+            p[x] = new Player(engines.get(x));
+         return p;
+      });
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+      long start = System.nanoTime();
+      try
+      {
+         List<Future<?>> tasks = new ArrayList<Future<?>>();
+         for(int[] g : games)
+            tasks.add(workers.submit(() -> {
+               Player[] p = players.get();
+               int diff = playGame(p[g[0]], p[g[1]], openings.get(g[2]));
+               record(g[0], g[1], diff, games.size(), start);
+               return null;
+            }));
+         for(Future<?> t : tasks)
+            t.get();
+      }
+      finally
+      {
+         workers.shutdownNow();
+      }
+      return games.size();
+   }
+   /**
+   * Plays one game to the end
+   * @param black the player playing black
+   * @param white the player playing white
+   * @param opening the position the game starts from
+   * @return the final chip difference for black, counting empty squares for
+   * the winner
+   */
+   private static int playGame(Player black, Player white,
+   OthelloPosition opening)
+   {
+      black.newGame();
+      white.newGame();
+      OthelloGame game = new OthelloGame(opening);
+      while(!game.isGameOver())
+      {
+         if(game.mustPass())
+            game.pass();
+         else
+            game.play((game.getColorToMove() == 1 ? black : white).findMove(
+               game.getPosition()));
+      }
+      OthelloPosition end = game.getPosition();
+      return OthelloEndgame.finalScore(end.getBlack(), end.getWhite());
+   }
+   /**
+   * Records the result of a game, reporting progress now and then
+   * @param black the index of the engine that played black
+   * @param white the index of the engine that played white
+   * @param diff the final chip difference for black
+   * @param total the number of games in the tournament
+   * @param start when the tournament started, from System.nanoTime
+   */
+   private synchronized void record(int black, int white, int diff,
+   int total, long start)
+   {
+      int r = diff > 0 ? 0 : diff == 0 ? 1 : 2;
+      results[black][white][r]++;
+      results[white][black][2 - r]++;
+      if(++finished % REPORT_INTERVAL == 0)
+         System.out.printf("%,d of %,d games, %.1f games/s%n", finished,
+            total, finished / ((System.nanoTime() - start) / 1e9));
+   }
+   /**
+   * Prints the score of every pairing and of every engine against all its
+   * opponents, with the Elo difference each implies
+   */
+   public void report()
+   {
+      System.out.printf("%-24s %7s %21s %7s %s%n", "", "games",
+         "wins/draws/losses", "score", "Elo");
+      for(int a = 0; a < engines.size(); a++)
+         for(int b = a + 1; b < engines.size(); b++)
+            if(!gauntlet || a == 0)
+               System.out.println(line(engines.get(a).name + " vs " +
+                  engines.get(b).name, results[a][b]));
+      System.out.println();
+      for(int a = 0; a < engines.size(); a++)
+      {
+         int[] total = new int[3];
+         for(int b = 0; b < engines.size(); b++)
+            for(int r = 0; r < 3; r++)
+               total[r] += results[a][b][r];
+         System.out.println(line(engines.get(a).name, total));
+      }
+   }
+   /**
+   * Writes one line of the report
+   * @param name the name of the line
+   * @param wdl the wins, draws and losses
+   * @return the line
+   */
+   private static String line(String name, int[] wdl)
+   {
+      int n = wdl[0] + wdl[1] + wdl[2];
+      if(n == 0)
+         return String.format("%-24s %7d", name, 0);
+      double score = (wdl[0] + wdl[1] / 2.0) / n;
+      return String.format("%-24s %7d %7d/%6d/%6d %6.1f%% %s", name, n,
+         wdl[0], wdl[1], wdl[2], score * 100, eloWithError(wdl));
+   }
+   /**
+   * Finds the Elo difference implied by a score and a 95% error bar, by the
+   * spread of the results of single games about the score
+   * @param wdl the wins, draws and losses
+   * @return the difference and error bar, such as "+35 +/- 21"
+   */
+   public static String eloWithError(int[] wdl)
+   {
+      int n = wdl[0] + wdl[1] + wdl[2];
+      double score = (wdl[0] + wdl[1] / 2.0) / n;
+      double variance = (wdl[0] * (1 - score) * (1 - score) + wdl[1] *
+         (0.5 - score) * (0.5 - score) + wdl[2] * score * score) / n;
+      double margin = Z95 * Math.sqrt(variance / n);
+      double low = elo(score - margin), high = elo(score + margin);
+      if(Double.isInfinite(elo(score)))
+         return score > 0.5 ? "+inf" : "-inf";
+      return String.format("%+4.0f +/- %s", elo(score), Double.isInfinite(low)
+         || Double.isInfinite(high) ? "inf" : String.format("%.0f",
+         (high - low) / 2));
+   }
+   /**
+   * Finds the difference in Elo rating between two players that makes one
+   * expected to score a certain fraction of the points against the other
+   * @param score the fraction of the points, from 0 to 1
+   * @return the difference, infinite for a score of 0 or 1 or beyond
+   */
+   public static double elo(double score)
+   {
+      if(score <= 0)
+         return Double.NEGATIVE_INFINITY;
+      if(score >= 1)
+         return Double.POSITIVE_INFINITY;
+      //adding 0 turns -0, for an even score, into 0
+      return -400 * Math.log10(1 / score - 1) + 0.0;
+   }
+   /**
+   * Makes a set of openings by playing random moves from the starting
+   * position, no two the same even when turned or reflected
+   * @param count the number of openings
+   * @param plies the number of random moves
+   * @param rand chooses the moves
+   * @return the openings, in random order
+   */
+   public static List<OthelloPosition> randomOpenings(int count, int plies,
+   Random rand)
+   {
+      List<OthelloPosition> openings = new ArrayList<OthelloPosition>();
+      Set<OthelloPosition> seen = new HashSet<OthelloPosition>();
+      for(int tries = 0; openings.size() < count && tries < count * 100;
+         tries++)
+      {
+         OthelloPosition p = OthelloPosition.START;
+         for(int x = 0; x < plies && p.legalMoves() != 0; x++)
+         {
+            long legal = p.legalMoves();
+            for(int y = rand.nextInt(Long.bitCount(legal)); y > 0; y--)
+               legal &= legal - 1;
+            p = p.play((byte)Long.numberOfTrailingZeros(legal));
+         }
+         if(p.legalMoves() != 0 && seen.add(OthelloSymmetry.canonical(p)))
+            openings.add(p);
+      }
+      return openings;
+   }
+   /**
+   * Takes a set of openings from the games of an archive: the position
+   * after a number of moves of each game, no two the same even when turned
+   * or reflected
+   * @param archive the archive
+   * @param count the most openings
+   * @param plies the number of moves played into each game
+   * @param rand shuffles the openings
+   * @return the openings, in random order
+   * @throws IOException if the archive cannot be read
+   */
+   public static List<OthelloPosition> archiveOpenings(String archive,
+   int count, int plies, Random rand) throws IOException
+   {
+      List<OthelloPosition> openings = new ArrayList<OthelloPosition>();
+      Set<OthelloPosition> seen = new HashSet<OthelloPosition>();
+      try(OthelloArchive.Reader in = new OthelloArchive.Reader(
+         Paths.get(archive)))
+      {
+         while(in.next())
+         {
+            if(in.getMoveCount() <= plies)
+               continue;
+            OthelloPosition p = OthelloPosition.START;
+            for(int x = 0; x < plies; x++)
+               p = in.getMove(x) == OthelloMove.PASS ? p.pass() :
+                  p.play(in.getMove(x));
+            if(p.legalMoves() != 0 && seen.add(OthelloSymmetry.canonical(p)))
+               openings.add(p);
+         }
+      }
+      Collections.shuffle(openings, rand);
+      return openings.subList(0, Math.min(count, openings.size()));
+   }
+   /**
+   * Runs a tournament and prints the results
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings: optionally "-gauntlet", "-openings" and the number
+   * of openings (default 50), "-plies" and the moves into the game each
+   * opening is (default 8), "-archive" and an archive to take the openings
+   * from, "-threads" and the games played at once (default the number of
+   * cores) and "-seed" and the seed choosing the openings; then two or
+   * more engines
+   * @throws Exception if a file cannot be read or a game fails
+   */
+   public static void main(String[] args) throws Exception
+   {
+      boolean gauntlet = false;
+      int count = 50, plies = 8;
+      int threads = Runtime.getRuntime().availableProcessors();
+      String archive = null;
+      long seed = System.nanoTime();
+      List<Engine> engines = new ArrayList<Engine>();
+      for(int x = 0; x < args.length; x++)
+      {
+         if(args[x].equals("-gauntlet"))
+            gauntlet = true;
+         else if(args[x].equals("-openings"))
+            count = Integer.parseInt(args[++x]);
+         else if(args[x].equals("-plies"))
+            plies = Integer.parseInt(args[++x]);
+         else if(args[x].equals("-archive"))
+            archive = args[++x];
+         else if(args[x].equals("-threads"))
+            threads = Integer.parseInt(args[++x]);
+         else if(args[x].equals("-seed"))
+            seed = Long.parseLong(args[++x]);
+         else
+            engines.add(Engine.parse(args[x]));
+      }
+      if(engines.size() < 2)
+      {
+         System.out.println("Usage: java OthelloTournament [-gauntlet] " +
+            "[-openings n] [-plies n] [-archive file] [-threads n] " +
+            "[-seed n] name:key=value,... name:key=value,...");
+         return;
+      }
+      Random rand = new Random(seed);
+      List<OthelloPosition> openings = archive != null ?
+         archiveOpenings(archive, count, plies, rand) :
+         randomOpenings(count, plies, rand);
+      OthelloTournament t = new OthelloTournament(engines, gauntlet,
+         openings);
+      long start = System.nanoTime();
+      int games = t.play(threads);
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println();
+      t.report();
+      System.out.printf("%n%,d games from %,d openings in %.1fs on %d " +
+         "threads, %.2f games/s%n", games, openings.size(), seconds, threads,
+         games / seconds);
+   }
+
+   /**
+    *  An Engine is a name and the settings of the AI it plays with.
+    **/
+   public static class Engine
+   {
+      /**
+      * The name of the engine
+      */
+      private final String name;
+      /**
+      * The most nodes searched for a move, or 0 for no limit
+      */
+      private long nodes;
+      /**
+      * The most milliseconds taken for a move, or 0 for no limit
+      */
+      private long time;
+      /**
+      * The deepest a search goes, or 0 for no limit
+      */
+      private int depth;
+      /**
+      * The empty squares at or below which the endgame is solved
+      */
+      private int endgame = 18;
+      /**
+      * Whether or not moves are ordered beyond the table's move
+      */
+      private boolean ordering = true;
+      /**
+      * The size of the table in bytes
+      */
+      private long hashBytes = 4L << 20;
+      /**
+      * The weights positions are evaluated with
+      */
+      private int[] weights = OthelloEvaluation.defaultWeights();
+      /**
+      * The opening book played from, or null for none
+      */
+      private OthelloBook book;
+
+      /**
+      * Constructs an Engine with the default settings
+      * @param n the name of the engine
+      */
+      public Engine(String n)
+      {
+         name = n;
+      }
+      /**
+      * Reads an engine written as "name:key=value,key=value"
+      * @param s the engine
+      * @return the engine
+      * @throws IOException if its weights or book cannot be read
+      * @throws IllegalArgumentException if a setting is not known
+      */
+      public static Engine parse(String s) throws IOException
+      {
+         int colon = s.indexOf(':');
+         Engine e = new Engine(colon < 0 ? s : s.substring(0, colon));
+         if(colon >= 0 && colon < s.length() - 1)
+            for(String setting : s.substring(colon + 1).split(","))
+            {
+               String[] kv = setting.split("=", 2);
+               if(kv.length != 2)
+                  throw new IllegalArgumentException("Not a setting: " +
+                     setting);
+               switch(kv[0])
+               {
+                  case "nodes": e.nodes = Long.parseLong(kv[1]); break;
+                  case "time": e.time = Long.parseLong(kv[1]); break;
+                  case "depth": e.depth = Integer.parseInt(kv[1]); break;
+                  case "endgame": e.endgame = Integer.parseInt(kv[1]); break;
+                  case "ordering": e.ordering = !kv[1].equals("off"); break;
+                  case "hash": e.hashBytes = Long.parseLong(kv[1]) << 20;
+                     break;
+                  case "weights":
+                     e.weights = OthelloEvaluation.load(Paths.get(kv[1]));
+                     break;
+                  case "book": e.book = new OthelloBook(Paths.get(kv[1]));
+                     break;
+                  default:
+                     throw new IllegalArgumentException("Unknown setting: " +
+                        kv[0]);
+               }
+            }
+         if(e.nodes == 0 && e.time == 0 && e.depth == 0)
+            e.nodes = 20000;
+         return e;
+      }
+   }
+
+   /**
+    *  A Player plays the moves of an engine on one thread, with its own
+    *  search and table.
+    **/
+   private static class Player
+   {
+      /**
+      * The engine played
+      */
+      private final Engine engine;
+      /**
+      * The table of the search
+      */
+      private final OthelloTranspositionTable table;
+      /**
+      * The search
+      */
+      private final OthelloSearch search;
+
+      /**
+      * Constructs a Player
+      * @param e the engine played
+      */
+      private Player(Engine e)
+      {
+         engine = e;
+         table = new OthelloTranspositionTable(e.hashBytes,
+            OthelloTranspositionTable.Replacement.DEPTH_PREFERRED);
+         search = new OthelloSearch(table, e.time, e.nodes);
+         search.setMaxDepth(e.depth);
+         search.setEndgameEmpties(e.endgame);
+         search.setMoveOrdering(e.ordering);
+         search.setWeights(e.weights);
+      }
+      /**
+      * Forgets the last game, both the table and the move ordering, so that 
+      * every game is played the same way whichever games the thread played 
+      * before
+      */
+      private void newGame()
+      {
+         table.clear();
+         search.resetMoveOrdering();
+      }
+      /**
+      * Chooses a move, from the book if it has one and otherwise by
+      * searching
+      * @param p the position, in which the player has a legal move
+      * @return the move
+      */
+      private byte findMove(OthelloPosition p)
+      {
+         if(engine.book != null)
+         {
+            byte move = engine.book.findMove(p);
+            if(move != OthelloMove.PASS)
+               return move;
+         }
+         return search.findBestMove(p);
+      }
+   }
+}
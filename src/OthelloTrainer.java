@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ *  OthelloTrainer fits the weights of an OthelloEvaluation to the results
+ *  of games written by OthelloSelfPlay, so that the evaluation of each
+ *  position predicts the final chip difference of the game it came from.
+ *  The weights are fitted by least squares with stochastic gradient
+ *  descent: each position nudges the weights it used toward the result of
+ *  its game. The weight of an arrangement of chips and that of the same
+ *  arrangement with the colors swapped are always changed together so
+ *  that one stays the negative of the other, as the evaluation needs.
+ *  Weights never seen in a game keep their starting values.
+ *
+ *  Run with the file to write the weights to, then one or more files of
+ *  games, optionally with "-e" and the number of passes over the games,
+ *  "-r" and the learning rate, and "-w" and a file of weights to start
+ *  from (the default weights if not given). The weights are written after
+ *  every pass, and can be used by copying them to othello.weights next to
+ *  the program.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloTrainer
+{
+   /**
+   * The number of points the evaluation gives for each chip of difference
+   * at the end of the game
+   */
+   private static final int POINTS_PER_CHIP = 10;
+   /**
+   * How much slower the mobility and frontier weights learn than the
+   * pattern weights, since their features are many times larger
+   */
+   private static final double SCALAR_RATE = 0.01;
+   /**
+   * The weights being fitted, in points
+   */
+   private static double[] weights;
+   /**
+   * The sum of the squared errors of the current pass
+   */
+   private static double squaredError;
+   /**
+   * The number of positions seen in the current pass
+   */
+   private static long positions;
+
+   /**
+   * Fits the weights
+   * @param args the supplied command-line arguments represented as an
+   * array of Strings, as described above
+   * @throws IOException if a file cannot be read or written
+   */
+   public static void main(String[] args) throws IOException
+   {
+      List<Path> files = new ArrayList<Path>();
+      int epochs = 8;
+      double rate = 0.0001;
+      int[] start = OthelloEvaluation.defaultWeights();
+      for(int x = 1; x < args.length; x++)
+      {
+         if(args[x].equals("-e") && x + 1 < args.length)
+            epochs = Integer.parseInt(args[++x]);
+         else if(args[x].equals("-r") && x + 1 < args.length)
+            rate = Double.parseDouble(args[++x]);
+         else if(args[x].equals("-w") && x + 1 < args.length)
+            start = OthelloEvaluation.load(Paths.get(args[++x]));
+         else
+            files.add(Paths.get(args[x]));
+      }
+      if(files.isEmpty())
+      {
+         System.out.println("Usage: java OthelloTrainer weights-file " +
+            "games-file... [-e passes] [-r rate] [-w start-weights]");
+         return;
+      }
+      Path out = Paths.get(args[0]);
+
+      weights = new double[start.length];
+      for(int x = 0; x < start.length; x++)
+         weights[x] = (double)start[x] / OthelloEvaluation.SCALE;
+      OthelloEvaluation evaluation = new OthelloEvaluation();
+      int[] features = new int[OthelloEvaluation.INSTANCES];
+      for(int e = 1; e <= epochs; e++)
+      {
+         long begin = System.nanoTime();
+         squaredError = 0;
+         positions = 0;
+         for(Path f : files)
+            try(OthelloArchive.Reader in = new OthelloArchive.Reader(f))
+            {
+               while(in.next())
+                  learn(in.getGame(), evaluation, features, rate);
+            }
+         OthelloEvaluation.save(out, round());
+         System.out.printf("pass %d: %,d positions, rms error %.2f chips, " +
+            "%.1fs%n", e, positions, Math.sqrt(squaredError / Math.max(1,
+            positions)) / POINTS_PER_CHIP, (System.nanoTime() - begin) / 1e9);
+      }
+   }
+   /**
+   * Learns from every position of a game where the player to move has a
+   * legal move
+   * @param game the finished game
+   * @param evaluation used to find the weights of each position
+   * @param features filled with the weights of each position
+   * @param rate the learning rate
+   */
+   private static void learn(OthelloGame game, OthelloEvaluation evaluation,
+   int[] features, double rate)
+   {
+      OthelloPosition end = game.getPosition();
+      int result = OthelloEndgame.finalScore(end.getBlack(), end.getWhite()) *
+         POINTS_PER_CHIP;
+      OthelloPosition p = game.getStart();
+      for(int x = 0; x < game.getMoveCount(); x++)
+      {
+         byte move = game.getMove(x);
+         if(move != OthelloMove.PASS)
+            learn(p, p.isBlackToMove() ? result : -result, evaluation,
+               features, rate);
+         p = p.play(move);
+      }
+   }
+   /**
+   * Moves the weights used by one position toward its result
+   * @param p the position
+   * @param target the result for the player to move, in points
+   * @param evaluation used to find the weights of the position
+   * @param features filled with the weights of the position
+   * @param rate the learning rate
+   */
+   private static void learn(OthelloPosition p, int target,
+   OthelloEvaluation evaluation, int[] features, double rate)
+   {
+      long me = p.getMover(), opp = p.getOpponent();
+      int stage = evaluation.getFeatures(me, opp, features);
+      int mobility = OthelloEvaluation.mobility(me, opp);
+      int frontier = OthelloEvaluation.frontier(me, opp);
+      int m = stage + OthelloEvaluation.MOBILITY;
+      int f = stage + OthelloEvaluation.FRONTIER;
+      double predicted = weights[m] * mobility + weights[f] * frontier;
+      for(int i : features)
+         predicted += weights[i];
+      double error = target - predicted;
+      squaredError += error * error;
+      positions++;
+
+      double step = rate * error;
+      for(int i : features)
+      {
+         weights[i] += step;
+         weights[OthelloEvaluation.swapColors(i)] -= step;
+      }
+      weights[m] += step * SCALAR_RATE * mobility;
+      weights[f] += step * SCALAR_RATE * frontier;
+   }
+   /**
+   * Rounds the weights to the units used by OthelloEvaluation
+   * @return the rounded weights
+   */
+   private static int[] round()
+   {
+      int[] w = new int[weights.length];
+      for(int x = 0; x < w.length; x++)
+         w[x] = (int)Math.round(weights[x] * OthelloEvaluation.SCALE);
+      return w;
+   }
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+/**
+ *  OthelloTranspositionTable remembers the results of positions already
+ *  searched, so that a position reached again through a different order of
+ *  moves does not need to be searched again. Each entry holds the depth
+ *  searched, whether the score is exact or only a bound, and the best move.
+ *
+ *  The table is a single long array with a fixed size chosen from a memory
+ *  cap, split into buckets of two entries. Each entry is stored as its data
+ *  and its hash XORed with that data, so an entry half-written by another
+ *  thread simply fails to match and no locking is needed.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public class OthelloTranspositionTable
+{
+   /**
+   * The ways a new entry can replace the entries already in its bucket
+   */
+   public enum Replacement
+   {
+      /**
+      * The first entry of a bucket is only replaced by a search at least as
+      * deep or by a later search, and the second entry is always replaced
+      */
+      DEPTH_PREFERRED,
+      /**
+      * The new entry always goes first in its bucket, and the entry it
+      * replaces moves to the second place
+      */
+      ALWAYS_REPLACE
+   }
+   /**
+   * The score is exact
+   */
+   public static final int EXACT = 0;
+   /**
+   * The score is at least the value stored
+   */
+   public static final int LOWER = 1;
+   /**
+   * The score is at most the value stored
+   */
+   public static final int UPPER = 2;
+   /**
+   * Returned by probe when the position is not in the table
+   */
+   public static final long MISS = 0;
+   /**
+   * The number of longs used by a bucket: a check and data pair per entry
+   */
+   private static final int BUCKET_LONGS = 4;
+   /**
+   * The largest number of longs a single Java array can hold, rounded down
+   * to a power of two
+   */
+   private static final long MAX_LONGS = 1L << 30;
+   /**
+   * A bit set in the data of every entry, so that data is never MISS
+   */
+   private static final long VALID = 1L << 63;
+   /**
+   * The bucket entries: for each entry, its hash XORed with its data, then
+   * its data
+   */
+   private final long[] table;
+   /**
+   * The number of buckets less one, used to find the bucket of a hash
+   */
+   private final int mask;
+   /**
+   * How new entries replace old ones
+   */
+   private final Replacement replacement;
+   /**
+   * The search the table is currently being used by, which lets entries
+   * from earlier searches be replaced first
+   */
+   private int generation;
+
+   /**
+   * Constructs an OthelloTranspositionTable using no more than a certain
+   * amount of memory
+   * @param maxBytes the most memory the table can use, in bytes; at least
+   * 32 bytes
+   * @param r how new entries replace old ones
+   */
+   public OthelloTranspositionTable(long maxBytes, Replacement r)
+   {
+      long longs = Math.min(maxBytes / 8, MAX_LONGS);
+      if(longs < BUCKET_LONGS)
+         throw new IllegalArgumentException("Table must hold at least one bucket");
+      int buckets = (int)Long.highestOneBit(longs / BUCKET_LONGS);
+      table = new long[buckets * BUCKET_LONGS];
+      mask = buckets - 1;
+      replacement = r;
+   }
+   /**
+   * Marks the start of a new search, so that entries from earlier searches
+   * are replaced first
+   */
+   public void newSearch()
+   {
+      generation = (generation + 1) & 0xff;
+   }
+   /**
+   * Removes all entries from the table
+   */
+   public void clear()
+   {
+      Arrays.fill(table, 0);
+   }
+   /**
+   * Returns the amount of memory used by the table's entries
+   * @return the size of the table in bytes
+   */
+   public long getBytes()
+   {
+      return table.length * 8L;
+   }
+   /**
+   * Looks up a position in the table
+   * @param hash the hash of the position
+   * @return the data of the entry, to be read with score, depth, bound and
+   * move, or MISS if the position is not in the table
+   */
+   public long probe(long hash)
+   {
+      int i = index(hash);
+      long data = table[i + 1];
+      if((table[i] ^ data) == hash)
+         return data;
+      data = table[i + 3];
+      if((table[i + 2] ^ data) == hash)
+         return data;
+      return MISS;
+   }
+   /**
+   * Stores the result of searching a position
+   * @param hash the hash of the position
+   * @param depth the depth searched, in plies
+   * @param bound whether the score is EXACT, a LOWER bound or an UPPER bound
+   * @param score the score found
+   * @param move the best move found (row * 8 + col), or -1 if none
+   */
+   public void store(long hash, int depth, int bound, int score, int move)
+   {
+      long data = VALID | (long)generation << 48 | (long)(move & 0x7f) << 40
+         | (long)bound << 38 | (long)Math.min(depth, 63) << 32
+         | (score & 0xffffffffL);
+      int i = index(hash);
+      long first = table[i + 1];
+      boolean firstMatches = (table[i] ^ first) == hash;
+      if(replacement == Replacement.DEPTH_PREFERRED)
+      {
+         if(firstMatches || first == MISS || depth(first) <= depth
+            || generation(first) != generation)
+            write(i, hash, data);
+         else
+            write(i + 2, hash, data);
+      }
+      else
+      {
+         if(!firstMatches && first != MISS)
+         {
+            table[i + 2] = table[i];
+            table[i + 3] = first;
+         }
+         write(i, hash, data);
+      }
+   }
+   /**
+   * Writes an entry into one place of a bucket
+   * @param i the index of the place in the table
+   * @param hash the hash of the position
+   * @param data the data of the entry
+   */
+   private void write(int i, long hash, long data)
+   {
+      table[i] = hash ^ data;
+      table[i + 1] = data;
+   }
+   /**
+   * Finds the index of the bucket of a position
+   * @param hash the hash of the position
+   * @return the index of the first long of its bucket
+   */
+   private int index(long hash)
+   {
+      return ((int)(hash >>> 32) & mask) * BUCKET_LONGS;
+   }
+   /**
+   * Returns the score stored in an entry
+   * @param data the data of the entry, as returned by probe
+   * @return the score stored
+   */
+   public static int score(long data)
+   {
+      return (int)data;
+   }
+   /**
+   * Returns the depth stored in an entry
+   * @param data the data of the entry, as returned by probe
+   * @return the depth searched, in plies
+   */
+   public static int depth(long data)
+   {
+      return (int)(data >>> 32) & 0x3f;
+   }
+   /**
+   * Returns the bound type stored in an entry
+   * @param data the data of the entry, as returned by probe
+   * @return EXACT, LOWER or UPPER
+   */
+   public static int bound(long data)
+   {
+      return (int)(data >>> 38) & 0x3;
+   }
+   /**
+   * Returns the best move stored in an entry
+   * @param data the data of the entry, as returned by probe
+   * @return the square of the best move (row * 8 + col), or -1 if none
+   */
+   public static int move(long data)
+   {
+      int move = (int)(data >>> 40) & 0x7f;
+      return move == 0x7f ? -1 : move;
+   }
+   /**
+   * Returns the search an entry was stored by
+   * @param data the data of the entry
+   * @return the generation of the table when the entry was stored
+   */
+   private static int generation(long data)
+   {
+      return (int)(data >>> 48) & 0xff;
+   }
+}
@@ -0,0 +1,80 @@
+import java.util.SplittableRandom;
+/**
+ *  OthelloZobrist computes the Zobrist hash of a position, and updates it
+ *  as moves are made without looking at the rest of the board. A position is
+ *  hashed from the point of view of the player to move: each of that
+ *  player's chips adds a random key for its square, and each of the
+ *  opponent's chips adds the same key rotated by 32 bits. Swapping whose
+ *  turn it is therefore only rotates the hash, so a move costs one key for
+ *  the new chip and one for each captured chip.
+ *
+ *  @author Nathan Harbison / Max White
+ *  @version 1.0
+ **/
+public final class OthelloZobrist
+{
+   /**
+   * The random key of each square for a chip of the player to move; fixed
+   * by a seed so hashes are the same from one run to the next
+   */
+   private static final long[] KEYS = new long[64];
+   /**
+   * The change in hash when a chip on each square changes color
+   */
+   private static final long[] FLIP_KEYS = new long[64];
+   static
+   {
+      SplittableRandom random = new SplittableRandom(0x0e11011eL);
+      for(int x = 0; x < 64; x++)
+      {
+         KEYS[x] = random.nextLong();
+         FLIP_KEYS[x] = KEYS[x] ^ Long.rotateLeft(KEYS[x], 32);
+      }
+   }
+
+   /**
+   * OthelloZobrist only holds static methods and cannot be instantiated
+   */
+   private OthelloZobrist()
+   {
+   }
+   /**
+   * Computes the hash of a position from scratch
+   * @param me the chips of the player to move
+   * @param opp the chips of the opponent
+   * @return the hash of the position
+   */
+   public static long hash(long me, long opp)
+   {
+      long mine = 0, theirs = 0;
+      for(; me != 0; me &= me - 1)
+         mine ^= KEYS[Long.numberOfTrailingZeros(me)];
+      for(; opp != 0; opp &= opp - 1)
+         theirs ^= KEYS[Long.numberOfTrailingZeros(opp)];
+      return mine ^ Long.rotateLeft(theirs, 32);
+   }
+   /**
+   * Finds the hash of the position after a move, from the hash before it
+   * @param hash the hash of the position before the move
+   * @param sq the square played on (row * 8 + col)
+   * @param flips the chips captured by the move
+   * @return the hash of the position after the move, from the point of view
+   * of the opponent, who is now to move
+   */
+   public static long afterMove(long hash, int sq, long flips)
+   {
+      hash ^= KEYS[sq];
+      for(; flips != 0; flips &= flips - 1)
+         hash ^= FLIP_KEYS[Long.numberOfTrailingZeros(flips)];
+      return Long.rotateLeft(hash, 32);
+   }
+   /**
+   * Finds the hash of the position after the player to move passes
+   * @param hash the hash of the position before the pass
+   * @return the hash of the position from the point of view of the opponent
+   */
+   public static long afterPass(long hash)
+   {
+      return Long.rotateLeft(hash, 32);
+   }
+}